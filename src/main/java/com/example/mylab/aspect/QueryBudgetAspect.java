@@ -0,0 +1,29 @@
+package com.example.mylab.aspect;
+
+import com.example.mylab.metrics.QueryBudgetDetector;
+import com.example.mylab.metrics.QueryScope;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+
+@Aspect
+@Component
+public class QueryBudgetAspect {
+    private final QueryBudgetDetector queryBudgetDetector;
+
+    public QueryBudgetAspect(QueryBudgetDetector queryBudgetDetector) {
+        this.queryBudgetDetector = queryBudgetDetector;
+    }
+
+    @Around("@annotation(org.springframework.transaction.annotation.Transactional) "
+            + "&& within(com.example.mylab.service..*)")
+    public Object scopeTransaction(ProceedingJoinPoint joinPoint) throws Throwable {
+        String name = joinPoint.getTarget().getClass().getSimpleName() + "." + joinPoint.getSignature().getName();
+        try (QueryScope scope = QueryScope.open(name)) {
+            Object result = joinPoint.proceed();
+            queryBudgetDetector.onClose(scope);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.mylab.aspect;
+
+import com.example.mylab.metrics.DbMetrics;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+
+@Aspect
+@Component
+public class RepositoryMetricsAspect {
+    private static final String REPOSITORY_PACKAGE = "com.example.mylab.repository";
+
+    private final DbMetrics dbMetrics;
+
+    public RepositoryMetricsAspect(DbMetrics dbMetrics) {
+        this.dbMetrics = dbMetrics;
+    }
+
+    @Around("target(com.example.mylab.repository.PersonRepository) "
+            + "|| target(com.example.mylab.repository.CountryRepository)")
+    public Object timeRepositoryCall(ProceedingJoinPoint joinPoint) throws Throwable {
+        long start = System.nanoTime();
+        try {
+            return joinPoint.proceed();
+        } finally {
+            dbMetrics.recordRepositoryCall(
+                    repositoryName(joinPoint.getTarget()) + "." + joinPoint.getSignature().getName(),
+                    System.nanoTime() - start);
+        }
+    }
+
+    private static String repositoryName(Object target) {
+        for (Class<?> type : target.getClass().getInterfaces()) {
+            if (type.getName().startsWith(REPOSITORY_PACKAGE)) {
+                return type.getSimpleName();
+            }
+        }
+        return target.getClass().getSimpleName();
+    }
+}
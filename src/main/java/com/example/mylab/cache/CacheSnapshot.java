@@ -0,0 +1,283 @@
+package com.example.mylab.cache;
+
+import com.example.mylab.dto.CountryDto;
+import com.example.mylab.dto.PersonDto;
+import com.example.mylab.repository.DataVersionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@Component
+public class CacheSnapshot {
+    private static final Logger logger = LoggerFactory.getLogger(CacheSnapshot.class);
+
+    private static final int MAGIC = 0x4D4C4353;
+    private static final int FORMAT_VERSION = 4;
+    private static final byte END = 0;
+    private static final byte KEY_ENTRY = 1;
+    private static final byte ID_ENTRY = 2;
+    private static final byte INT_ARRAY = 1;
+    private static final byte STRING = 2;
+    private static final byte PERSON = 3;
+
+    private final CommonCache commonCache;
+    private final DataVersionRepository dataVersionRepository;
+    private final boolean enabled;
+    private final Path path;
+    private final String instanceId;
+    private final long maxAgeMs;
+
+    public CacheSnapshot(
+            CommonCache commonCache,
+            DataVersionRepository dataVersionRepository,
+            @Value("${mylab.cache.snapshot.enabled:false}") boolean enabled,
+            @Value("${mylab.cache.snapshot.path:data/mylab-cache.snapshot}") String path,
+            @Value("${mylab.cache.snapshot.instance-id:${spring.datasource.url:}}") String instanceId,
+            @Value("${mylab.cache.max-stale-ms:3600000}") long maxAgeMs) {
+        this.commonCache = commonCache;
+        this.dataVersionRepository = dataVersionRepository;
+        this.enabled = enabled;
+        this.path = Paths.get(path);
+        this.instanceId = instanceId;
+        this.maxAgeMs = maxAgeMs;
+    }
+
+    // Entries are parsed in full before any is restored, so a truncated or foreign file leaves the cache empty.
+    @PostConstruct
+    public void load() {
+        if (!enabled || !Files.isRegularFile(path)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            List<Runnable> restores = read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            restores.forEach(Runnable::run);
+            logger.info("Restored {} cache entries from {}", restores.size(), path);
+        } catch (IOException | BufferUnderflowException | IllegalStateException e) {
+            logger.warn("Ignoring unreadable cache snapshot {}: {}", path, e.toString());
+        }
+    }
+
+    @Scheduled(
+            initialDelayString = "${mylab.cache.snapshot.interval-ms:300000}",
+            fixedDelayString = "${mylab.cache.snapshot.interval-ms:300000}")
+    public void scheduledWrite() {
+        if (enabled) {
+            write();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (enabled) {
+            write();
+        }
+    }
+
+    // Written to a temporary file and moved into place, so readers never see a half-written snapshot. The
+    // watermark is read before the entries, so a change made in between makes the snapshot look outdated.
+    public synchronized void write() {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        int written = 0;
+        try {
+            String watermark = dataVersionRepository.currentWatermark();
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                writeString(out, instanceId);
+                writeString(out, watermark);
+                out.writeLong(System.currentTimeMillis());
+                for (Map.Entry<String, Object> entry : commonCache.liveEntries().entrySet()) {
+                    if (isSupported(entry.getValue())) {
+                        out.writeByte(KEY_ENTRY);
+                        writeString(out, entry.getKey());
+                        writeValue(out, entry.getValue());
+                        written++;
+                    }
+                }
+                for (Map.Entry<String, Map<Integer, Object>> cache : commonCache.liveIdEntries().entrySet()) {
+                    for (Map.Entry<Integer, Object> entry : cache.getValue().entrySet()) {
+                        if (isSupported(entry.getValue())) {
+                            out.writeByte(ID_ENTRY);
+                            writeString(out, cache.getKey());
+                            out.writeInt(entry.getKey());
+                            writeValue(out, entry.getValue());
+                            written++;
+                        }
+                    }
+                }
+                out.writeByte(END);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.debug("Wrote {} cache entries to {}", written, path);
+        } catch (IOException | DataAccessException e) {
+            logger.warn("Could not write cache snapshot {}: {}", path, e.toString());
+        }
+    }
+
+    private List<Runnable> read(ByteBuffer buffer) {
+        if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+            throw new IllegalStateException("unknown snapshot format");
+        }
+        // A snapshot taken against another database would restore rows that do not exist here.
+        String writtenFor = readString(buffer);
+        if (!instanceId.equals(writtenFor)) {
+            throw new IllegalStateException("snapshot belongs to instance " + writtenFor);
+        }
+        String watermark = readString(buffer);
+        long writtenAt = buffer.getLong();
+        long ageMs = Math.max(0, System.currentTimeMillis() - writtenAt);
+        if (ageMs > maxAgeMs) {
+            logger.info("Cache snapshot {} is older than {} ms, skipping it", path, maxAgeMs);
+            return List.of();
+        }
+        // Unchanged data lets the entries be served as they are and changed data discards them; if the database
+        // cannot be reached they come back as stale fallbacks for the read-through path.
+        String current = currentWatermark();
+        if (current != null && !current.equals(watermark)) {
+            logger.info("Data changed since cache snapshot {} was written, skipping it", path);
+            return List.of();
+        }
+        boolean fresh = current != null;
+
+        List<Runnable> restores = new ArrayList<>();
+        for (byte kind = buffer.get(); kind != END; kind = buffer.get()) {
+            if (kind == KEY_ENTRY) {
+                String key = readString(buffer);
+                Object value = readValue(buffer);
+                restores.add(() -> commonCache.restore(key, value, ageMs, fresh));
+            } else if (kind == ID_ENTRY) {
+                String cacheName = readString(buffer);
+                int id = buffer.getInt();
+                Object value = readValue(buffer);
+                restores.add(() -> commonCache.restoreWithId(cacheName, id, value, ageMs, fresh));
+            } else {
+                throw new IllegalStateException("unknown entry kind " + kind);
+            }
+        }
+        return restores;
+    }
+
+    private String currentWatermark() {
+        try {
+            return dataVersionRepository.currentWatermark();
+        } catch (DataAccessException e) {
+            logger.warn("Could not validate cache snapshot {}, restoring it as stale: {}", path, e.toString());
+            return null;
+        }
+    }
+
+    private static boolean isSupported(Object value) {
+        return value instanceof int[] || value instanceof String || value instanceof PersonDto;
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value instanceof int[]) {
+            int[] ids = (int[]) value;
+            out.writeByte(INT_ARRAY);
+            out.writeInt(ids.length);
+            for (int id : ids) {
+                out.writeInt(id);
+            }
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) value);
+        } else {
+            PersonDto person = (PersonDto) value;
+            out.writeByte(PERSON);
+            out.writeInt(person.getId());
+            writeString(out, person.getName());
+            writeString(out, person.getSurname());
+            out.writeBoolean(person.getVersion() != null);
+            out.writeLong(person.getVersion() == null ? 0 : person.getVersion());
+            out.writeInt(person.getCountries().size());
+            for (CountryDto country : person.getCountries()) {
+                out.writeInt(country.getId());
+                writeString(out, country.getName());
+                writeString(out, country.getCode());
+            }
+        }
+    }
+
+    private static Object readValue(ByteBuffer buffer) {
+        byte type = buffer.get();
+        if (type == INT_ARRAY) {
+            int[] ids = new int[readLength(buffer, Integer.BYTES)];
+            buffer.asIntBuffer().get(ids);
+            buffer.position(buffer.position() + ids.length * Integer.BYTES);
+            return ids;
+        }
+        if (type == STRING) {
+            return readString(buffer);
+        }
+        if (type == PERSON) {
+            int id = buffer.getInt();
+            String name = readString(buffer);
+            String surname = readString(buffer);
+            boolean versioned = buffer.get() != 0;
+            long version = buffer.getLong();
+            int count = readLength(buffer, Integer.BYTES);
+            List<CountryDto> countries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                countries.add(new CountryDto(buffer.getInt(), readString(buffer), readString(buffer)));
+            }
+            return new PersonDto(id, name, surname, versioned ? version : null, countries);
+        }
+        throw new IllegalStateException("unknown value type " + type);
+    }
+
+    // Strings are a length-prefixed UTF-8 run; -1 stands for null.
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalStateException("bad string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int readLength(ByteBuffer buffer, int elementBytes) {
+        int length = buffer.getInt();
+        if (length < 0 || (long) length * elementBytes > buffer.remaining()) {
+            throw new IllegalStateException("bad length " + length);
+        }
+        return length;
+    }
+}
@@ -1,44 +1,349 @@
 package com.example.mylab.cache;
 
+import com.example.mylab.metrics.DbContextPropagation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
-import java.util.HashMap;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
 @Component
 public class CommonCache {
-    private static final Map<String, Object> cache = new HashMap<>();
-    private static final Map<String, Map<Integer, Object>> idCache = new HashMap<>();
+    private static final Logger logger = LoggerFactory.getLogger(CommonCache.class);
+    private static final int REFRESH_THREADS = 4;
+    private static final int REFRESH_QUEUE_CAPACITY = 1000;
+
+    private final Map<String, Entry> cache = new ConcurrentHashMap<>();
+    private final Map<String, Map<Integer, Entry>> idCache = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final long softTtlNanos;
+    private final long hardTtlNanos;
+    private final long maxStaleNanos;
+    private final long loadTimeoutNanos;
+    // Bounded, so a refresh backlog is rejected (and the stale value served) instead of piling up.
+    private final ExecutorService refreshExecutor = new ThreadPoolExecutor(
+            REFRESH_THREADS, REFRESH_THREADS, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(REFRESH_QUEUE_CAPACITY),
+            runnable -> {
+                Thread thread = new Thread(runnable, "cache-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
 
-    public static void put(String key, Object value) {
-        cache.put(key, value);
+    public CommonCache(
+            @Value("${mylab.cache.soft-ttl-ms:60000}") long softTtlMs,
+            @Value("${mylab.cache.hard-ttl-ms:600000}") long hardTtlMs,
+            @Value("${mylab.cache.max-stale-ms:3600000}") long maxStaleMs,
+            @Value("${mylab.cache.load-timeout-ms:500}") long loadTimeoutMs) {
+        this.softTtlNanos = TimeUnit.MILLISECONDS.toNanos(softTtlMs);
+        this.hardTtlNanos = TimeUnit.MILLISECONDS.toNanos(hardTtlMs);
+        this.maxStaleNanos = TimeUnit.MILLISECONDS.toNanos(maxStaleMs);
+        this.loadTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(loadTimeoutMs);
     }
 
-    public static <T> T get(String key, Class<T> type) {
-        Object value = cache.get(key);
-        return type.isInstance(value) ? type.cast(value) : null;
+    // A null value invalidates the entry but keeps it as a last known value for stale serving.
+    public void put(String key, Object value) {
+        if (value == null) {
+            cache.computeIfPresent(key, (k, entry) -> entry.invalidate());
+        } else {
+            cache.put(key, new Entry(value));
+        }
     }
 
-    public static void putWithId(String cacheName, Integer id, Object value) {
-        idCache.computeIfAbsent(cacheName, k -> new HashMap<>()).put(id, value);
+    public <T> T get(String key, Class<T> type) {
+        return valid(cache.get(key), type);
     }
 
-    public static <T> T getById(String cacheName, Integer id, Class<T> type) {
-        Map<Integer, Object> specificCache = idCache.get(cacheName);
-        if (specificCache == null) return null;
+    public void putWithId(String cacheName, Integer id, Object value) {
+        idCache.computeIfAbsent(cacheName, k -> new ConcurrentHashMap<>()).put(id, new Entry(value));
+    }
+
+    public <T> T getById(String cacheName, Integer id, Class<T> type) {
+        return valid(entryById(cacheName, id), type);
+    }
+
+    // Resolves an id list entry against the id cache; a single missing id makes the whole list a miss.
+    public <T> List<T> getAllById(String cacheName, int[] ids, Class<T> type) {
+        return resolveAll(cacheName, ids, type, false);
+    }
+
+    public <T> List<T> getAllByIdStale(String cacheName, int[] ids, Class<T> type) {
+        return resolveAll(cacheName, ids, type, true);
+    }
+
+    public <T> T getOrLoad(String key, Class<T> type, Supplier<T> loader) {
+        return getOrLoad(key, type, loader, null);
+    }
+
+    // versionOf, when given, keeps a loaded value from replacing an entry that holds a newer version.
+    public <T> T getOrLoad(String key, Class<T> type, Supplier<T> loader, Function<T, Long> versionOf) {
+        return readThrough("key:" + key, cache.get(key), type, loader,
+                (expected, value) -> storeIfUnchanged(cache, key, expected, value, type, versionOf));
+    }
 
-        Object value = specificCache.get(id);
-        return type.isInstance(value) ? type.cast(value) : null;
+    public <T> T getByIdOrLoad(String cacheName, Integer id, Class<T> type, Supplier<T> loader) {
+        return getByIdOrLoad(cacheName, id, type, loader, null);
     }
 
-    public static void removeById(String cacheName, Integer id) {
-        Map<Integer, Object> specificCache = idCache.get(cacheName);
+    public <T> T getByIdOrLoad(
+            String cacheName, Integer id, Class<T> type, Supplier<T> loader, Function<T, Long> versionOf) {
+        Map<Integer, Entry> specificCache = idCache.computeIfAbsent(cacheName, k -> new ConcurrentHashMap<>());
+        return readThrough("id:" + cacheName + ":" + id, specificCache.get(id), type, loader,
+                (expected, value) -> storeIfUnchanged(specificCache, id, expected, value, type, versionOf));
+    }
+
+    // Removes the entry outright, so deleted rows are neither kept on the heap nor served as stale values.
+    public void removeById(String cacheName, Integer id) {
+        Map<Integer, Entry> specificCache = idCache.get(cacheName);
         if (specificCache != null) {
             specificCache.remove(id);
         }
     }
 
-    public static void clearAll() {
+    public void removeByPrefix(String prefix) {
+        cache.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    // Snapshot support: only live entries are exported. Restored ones keep the snapshot's age. Validated ones are
+    // served like any other entry; unvalidated ones come back invalidated, so only the read-through path can
+    // serve them, stale, while it reloads.
+    public Map<String, Object> liveEntries() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        cache.forEach((key, entry) -> {
+            if (valid(entry, Object.class) != null) {
+                result.put(key, entry.value);
+            }
+        });
+        return result;
+    }
+
+    public Map<String, Map<Integer, Object>> liveIdEntries() {
+        Map<String, Map<Integer, Object>> result = new LinkedHashMap<>();
+        idCache.forEach((cacheName, specificCache) -> specificCache.forEach((id, entry) -> {
+            if (valid(entry, Object.class) != null) {
+                result.computeIfAbsent(cacheName, k -> new LinkedHashMap<>()).put(id, entry.value);
+            }
+        }));
+        return result;
+    }
+
+    public void restore(String key, Object value, long ageMs, boolean validated) {
+        cache.putIfAbsent(key, restoredEntry(value, ageMs, validated));
+    }
+
+    public void restoreWithId(String cacheName, Integer id, Object value, long ageMs, boolean validated) {
+        idCache.computeIfAbsent(cacheName, k -> new ConcurrentHashMap<>())
+                .putIfAbsent(id, restoredEntry(value, ageMs, validated));
+    }
+
+    public void clearAll() {
         cache.clear();
         idCache.clear();
     }
-}
\ No newline at end of file
+
+    // Entries past max-stale can no longer be served, fresh or stale, so they only hold memory.
+    @Scheduled(fixedDelayString = "${mylab.cache.sweep-interval-ms:60000}")
+    public int sweep() {
+        long now = System.nanoTime();
+        int before = size();
+        cache.values().removeIf(entry -> now - entry.storedAt >= maxStaleNanos);
+        idCache.values().forEach(specificCache -> specificCache.values()
+                .removeIf(entry -> now - entry.storedAt >= maxStaleNanos));
+        return before - size();
+    }
+
+    public int size() {
+        return cache.size() + idCache.values().stream().mapToInt(Map::size).sum();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
+
+    // Fresh entries are returned as is; past the soft TTL one background refresh starts; invalidated or
+    // hard-expired entries are reloaded, falling back to the last known value if the load fails or is slow.
+    // Concurrent misses share one load.
+    private <T> T readThrough(String flightKey, Entry entry, Class<T> type, Supplier<T> loader, Store<T> store) {
+        long now = System.nanoTime();
+        if (entry != null && !entry.invalidated && type.isInstance(entry.value)) {
+            long age = now - entry.storedAt;
+            if (age < softTtlNanos) {
+                return type.cast(entry.value);
+            }
+            if (age < hardTtlNanos) {
+                load(flightKey, entry, loader, store, false);
+                return type.cast(entry.value);
+            }
+        }
+
+        T stale = entry != null && type.isInstance(entry.value) && now - entry.storedAt < maxStaleNanos
+                ? type.cast(entry.value)
+                : null;
+        if (stale == null) {
+            Object value = await(load(flightKey, entry, loader, store, true));
+            return type.isInstance(value) ? type.cast(value) : null;
+        }
+
+        try {
+            Object value = load(flightKey, entry, loader, store, false).get(loadTimeoutNanos, TimeUnit.NANOSECONDS);
+            return type.isInstance(value) ? type.cast(value) : null;
+        } catch (TimeoutException | ExecutionException e) {
+            logger.warn("Serving stale cache entry {}: {}", flightKey, e.toString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        StaleResponse.mark();
+        return stale;
+    }
+
+    // The first caller for a key starts the load, inline or on a refresh thread; later callers get its future.
+    // Refresh threads run with the caller's request context, so their statements are counted for it and carry
+    // its correlation id; the query budget is not enforced on them.
+    private <T> CompletableFuture<Object> load(
+            String flightKey, Entry expected, Supplier<T> loader, Store<T> store, boolean inline) {
+        CompletableFuture<Object> created = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(flightKey, created);
+        if (existing != null) {
+            return existing;
+        }
+        Runnable task = () -> {
+            try {
+                T value = loader.get();
+                store.apply(expected, value);
+                created.complete(value);
+            } catch (RuntimeException | Error e) {
+                created.completeExceptionally(e);
+            } finally {
+                inFlight.remove(flightKey, created);
+            }
+        };
+        if (inline) {
+            task.run();
+            return created;
+        }
+        try {
+            refreshExecutor.execute(DbContextPropagation.wrap(task));
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(flightKey, created);
+            created.completeExceptionally(e);
+        }
+        return created;
+    }
+
+    private static Object await(CompletableFuture<Object> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private <T> List<T> resolveAll(String cacheName, int[] ids, Class<T> type, boolean allowStale) {
+        Map<Integer, Entry> specificCache = idCache.get(cacheName);
+        if (specificCache == null) return null;
+
+        List<T> values = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            Entry entry = specificCache.get(id);
+            T value = allowStale ? stale(entry, type) : valid(entry, type);
+            if (value == null) {
+                return null;
+            }
+            values.add(value);
+        }
+        return values;
+    }
+
+    private Entry entryById(String cacheName, Integer id) {
+        Map<Integer, Entry> specificCache = idCache.get(cacheName);
+        return specificCache == null ? null : specificCache.get(id);
+    }
+
+    // Skips the store when the key was written, invalidated or removed after the load started, or already holds a
+    // newer version, so a load that read a row before a concurrent update cannot overwrite the updated entry.
+    private static <K, T> void storeIfUnchanged(
+            Map<K, Entry> map, K key, Entry expected, T value, Class<T> type, Function<T, Long> versionOf) {
+        map.compute(key, (k, current) -> {
+            if (current != expected || isNewer(current, value, type, versionOf)) {
+                return current;
+            }
+            return value == null ? null : new Entry(value);
+        });
+    }
+
+    private static <T> boolean isNewer(Entry current, T value, Class<T> type, Function<T, Long> versionOf) {
+        if (versionOf == null || current == null || value == null || !type.isInstance(current.value)) {
+            return false;
+        }
+        Long currentVersion = versionOf.apply(type.cast(current.value));
+        Long loadedVersion = versionOf.apply(value);
+        return currentVersion != null && loadedVersion != null && currentVersion > loadedVersion;
+    }
+
+    private static Entry restoredEntry(Object value, long ageMs, boolean validated) {
+        return new Entry(value, System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(ageMs), !validated);
+    }
+
+    private <T> T valid(Entry entry, Class<T> type) {
+        if (entry == null || entry.invalidated || System.nanoTime() - entry.storedAt >= hardTtlNanos) {
+            return null;
+        }
+        return type.isInstance(entry.value) ? type.cast(entry.value) : null;
+    }
+
+    private <T> T stale(Entry entry, Class<T> type) {
+        if (entry == null || System.nanoTime() - entry.storedAt >= maxStaleNanos) {
+            return null;
+        }
+        return type.isInstance(entry.value) ? type.cast(entry.value) : null;
+    }
+
+    private interface Store<T> {
+        void apply(Entry expected, T value);
+    }
+
+    private static final class Entry {
+        private final Object value;
+        private final long storedAt;
+        private final boolean invalidated;
+
+        private Entry(Object value) {
+            this(value, System.nanoTime(), false);
+        }
+
+        private Entry(Object value, long storedAt, boolean invalidated) {
+            this.value = value;
+            this.storedAt = storedAt;
+            this.invalidated = invalidated;
+        }
+
+        private Entry invalidate() {
+            return new Entry(value, storedAt, true);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.mylab.cache;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+@Component
+public class NegativeCache {
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final ConcurrentMap<String, Long> expiries = new ConcurrentHashMap<>();
+
+    // Kept apart from CommonCache with its own bound, so a flood of misses cannot evict real entries.
+    public NegativeCache(
+            @Value("${mylab.cache.negative.ttl-ms:30000}") long ttlMs,
+            @Value("${mylab.cache.negative.max-entries:10000}") int maxEntries) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        this.maxEntries = maxEntries;
+    }
+
+    public void put(String key) {
+        expiries.put(key, System.nanoTime() + ttlNanos);
+        if (expiries.size() > maxEntries) {
+            trim();
+        }
+    }
+
+    // Read on every lookup, so it takes no lock; expired keys are dropped as they are seen.
+    public boolean contains(String key) {
+        Long expiry = expiries.get(key);
+        if (expiry == null) {
+            return false;
+        }
+        if (expiry - System.nanoTime() <= 0) {
+            expiries.remove(key, expiry);
+            return false;
+        }
+        return true;
+    }
+
+    public void evict(String key) {
+        expiries.remove(key);
+    }
+
+    public void clear() {
+        expiries.clear();
+    }
+
+    public int size() {
+        return expiries.size();
+    }
+
+    // The bound is approximate: expired keys go first, then arbitrary ones until the map is back under it.
+    private void trim() {
+        long now = System.nanoTime();
+        expiries.values().removeIf(expiry -> expiry - now <= 0);
+        Iterator<String> keys = expiries.keySet().iterator();
+        while (expiries.size() > maxEntries && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.mylab.cache;
+
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.servlet.http.HttpServletResponse;
+
+public final class StaleResponse {
+    public static final String HEADER = "X-Cache-Stale";
+
+    private StaleResponse() {
+    }
+
+    public static void mark() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes)) {
+            return;
+        }
+        HttpServletResponse response = ((ServletRequestAttributes) attributes).getResponse();
+        if (response != null && !response.isCommitted()) {
+            response.setHeader(HEADER, "true");
+            response.setHeader("Warning", "110 - \"Response is Stale\"");
+        }
+    }
+}
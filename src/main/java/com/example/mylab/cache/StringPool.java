@@ -0,0 +1,33 @@
+package com.example.mylab.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// Shares one instance per distinct string up to a fixed count; past it strings are returned as they are.
+public class StringPool {
+    private final int maxEntries;
+    private final ConcurrentMap<String, String> strings = new ConcurrentHashMap<>();
+
+    public StringPool(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public String share(String value) {
+        if (value == null) {
+            return null;
+        }
+        String shared = strings.get(value);
+        if (shared != null) {
+            return shared;
+        }
+        if (strings.size() >= maxEntries) {
+            return value;
+        }
+        shared = strings.putIfAbsent(value, value);
+        return shared == null ? value : shared;
+    }
+
+    public int size() {
+        return strings.size();
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.mylab.config;
+
+import com.example.mylab.metrics.DbMetrics;
+import com.example.mylab.metrics.MeteredDataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+
+@Component
+public class MeteredDataSourcePostProcessor implements BeanPostProcessor {
+    private final ObjectProvider<DbMetrics> dbMetrics;
+
+    public MeteredDataSourcePostProcessor(ObjectProvider<DbMetrics> dbMetrics) {
+        this.dbMetrics = dbMetrics;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof DataSource && !(bean instanceof MeteredDataSource)) {
+            return new MeteredDataSource((DataSource) bean, dbMetrics.getObject());
+        }
+        return bean;
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.mylab.controller;
+
+import com.example.mylab.feed.ChangeEvent;
+import com.example.mylab.feed.ChangeFeed;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/changes")
+public class ChangeFeedController {
+    private static final long MAX_POLL_TIMEOUT_MS = 60_000;
+
+    private final ChangeFeed changeFeed;
+
+    public ChangeFeedController(ChangeFeed changeFeed) {
+        this.changeFeed = changeFeed;
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamChanges(
+            @RequestParam(required = false) Long since,
+            @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        long cursor = lastEventId != null ? lastEventId : since != null ? since : changeFeed.getLastSequence();
+        return changeFeed.subscribe(cursor);
+    }
+
+    @GetMapping
+    public DeferredResult<List<ChangeEvent>> pollChanges(
+            @RequestParam(defaultValue = "0") long since,
+            @RequestParam(defaultValue = "30000") long timeoutMs) {
+        return changeFeed.poll(since, Math.max(0, Math.min(timeoutMs, MAX_POLL_TIMEOUT_MS)));
+    }
+}
@@ -1,5 +1,7 @@
 package com.example.mylab.controller;
 
+import com.example.mylab.dto.CountryDto;
+import com.example.mylab.dto.CountryUpsertResult;
 import com.example.mylab.model.Country;
 import com.example.mylab.service.CountryService;
 import org.springframework.http.ResponseEntity;
@@ -21,7 +23,7 @@ public class CountryCodeController {
     @PostMapping
     public ResponseEntity<?> createCountry(@RequestBody Country country) {
         try {
-            Country createdCountry = countryService.create(country);
+            CountryDto createdCountry = countryService.create(country);
             return ResponseEntity.ok(createdCountry);
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().body(e.getMessage());
@@ -30,6 +32,11 @@ public class CountryCodeController {
         }
     }
 
+    @PostMapping("/bulk")
+    public ResponseEntity<List<CountryUpsertResult>> upsertCountries(@RequestBody List<Country> countries) {
+        return ResponseEntity.ok(countryService.upsertAll(countries));
+    }
+
     @GetMapping("/code/{countryName}")
     public ResponseEntity<String> getCountryCode(@PathVariable String countryName) {
         String code = countryService.getCodeByCountry(countryName);
@@ -47,22 +54,22 @@ public class CountryCodeController {
     }
 
     @GetMapping
-    public ResponseEntity<List<Country>> getAllCountries() {
+    public ResponseEntity<List<CountryDto>> getAllCountries() {
         return ResponseEntity.ok(countryService.findAll());
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<Country> getCountryById(@PathVariable Integer id) {
+    public ResponseEntity<CountryDto> getCountryById(@PathVariable Integer id) {
         return countryService.findById(id)
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
 
     @PutMapping("/{id}")
-    public ResponseEntity<Country> updateCountry(
+    public ResponseEntity<CountryDto> updateCountry(
             @PathVariable Integer id,
             @RequestBody Country countryDetails) {
-        Country updatedCountry = countryService.update(id, countryDetails);
+        CountryDto updatedCountry = countryService.update(id, countryDetails);
         return updatedCountry != null
                 ? ResponseEntity.ok(updatedCountry)
                 : ResponseEntity.notFound().build();
@@ -0,0 +1,25 @@
+package com.example.mylab.controller;
+
+import com.example.mylab.metrics.DbStatisticsReporter;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/metrics")
+public class DbMetricsController {
+
+    private final DbStatisticsReporter dbStatisticsReporter;
+
+    public DbMetricsController(DbStatisticsReporter dbStatisticsReporter) {
+        this.dbStatisticsReporter = dbStatisticsReporter;
+    }
+
+    @GetMapping("/db")
+    public ResponseEntity<Map<String, Object>> getDbMetrics() {
+        return ResponseEntity.ok(dbStatisticsReporter.report());
+    }
+}
@@ -1,6 +1,9 @@
 package com.example.mylab.controller;
 
+import com.example.mylab.dto.PersonDto;
+import com.example.mylab.dto.PersonQuery;
 import com.example.mylab.model.Person;
+import com.example.mylab.service.PersonQueryService;
 import com.example.mylab.service.PersonService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
@@ -15,38 +18,65 @@ public class PersonController {
     @Autowired
     private PersonService personService;
 
+    @Autowired
+    private PersonQueryService personQueryService;
+
     @GetMapping
-    public List<Person> getAllPersons() {
+    public List<PersonDto> getAllPersons() {
         return personService.findAll();
     }
 
+    @GetMapping(params = "ids")
+    public List<PersonDto> getPersonsByIds(@RequestParam List<Integer> ids) {
+        return personService.findAllByIds(ids);
+    }
+
+    @PostMapping("/by-ids")
+    public List<PersonDto> getPersonsByIdList(@RequestBody List<Integer> ids) {
+        return personService.findAllByIds(ids);
+    }
+
+    @GetMapping("/query")
+    public List<PersonDto> queryPersons(
+            @RequestParam(required = false) String country,
+            @RequestParam(required = false) String surnamePrefix,
+            @RequestParam(required = false) Integer minCountries,
+            @RequestParam(required = false) Integer maxCountries,
+            @RequestParam(defaultValue = "id") String sort,
+            @RequestParam(defaultValue = "false") boolean desc,
+            @RequestParam(defaultValue = "100") int limit) {
+        return personQueryService.query(new PersonQuery(
+                country, surnamePrefix, minCountries, maxCountries, PersonQuery.Sort.parse(sort), desc, limit));
+    }
+
     @GetMapping("/{id}")
-    public ResponseEntity<Person> getPersonById(@PathVariable Integer id) {
-        Optional<Person> person = personService.findById(id);
+    public ResponseEntity<PersonDto> getPersonById(@PathVariable Integer id) {
+        Optional<PersonDto> person = personService.findById(id);
         return person.map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
 
     @PostMapping("/create")
-    public Person createPerson(@RequestBody Person person) {
+    public PersonDto createPerson(@RequestBody Person person) {
         return personService.create(person);
     }
 
+    // The body must carry the version last read: 400 without one, 409 when it is stale, 404 when the person is gone.
     @PutMapping("/{id}")
-    public ResponseEntity<Person> updatePerson(@PathVariable Integer id, @RequestBody Person personDetails) {
-        Person updatedPerson = personService.update(id, personDetails);
+    public ResponseEntity<PersonDto> updatePerson(@PathVariable Integer id, @RequestBody Person personDetails) {
+        PersonDto updatedPerson = personService.update(id, personDetails);
         return updatedPerson != null ? ResponseEntity.ok(updatedPerson) : ResponseEntity.notFound().build();
     }
 
     @PostMapping("/createAll")
-    public ResponseEntity<List<Person>> createPersons(@RequestBody List<Person> persons) {
-        List<Person> createdPersons = personService.createAll(persons);
+    public ResponseEntity<List<PersonDto>> createPersons(@RequestBody List<Person> persons) {
+        List<PersonDto> createdPersons = personService.createAll(persons);
         return ResponseEntity.ok(createdPersons);
     }
 
     @PutMapping("/updateAll")
-    public ResponseEntity<List<Person>> updatePersons(@RequestBody List<Person> personUpdates) {
-        List<Person> updatedPersons = personService.updateAll(personUpdates);
+    public ResponseEntity<List<PersonDto>> updatePersons(@RequestBody List<Person> personUpdates) {
+        List<PersonDto> updatedPersons = personService.updateAll(personUpdates);
         return ResponseEntity.ok(updatedPersons);
     }
 
@@ -57,8 +87,8 @@ public class PersonController {
     }
 
     @GetMapping("/by-country")
-    public ResponseEntity<List<Person>> getPersonsByCountry(@RequestParam String country) {
-        List<Person> persons = personService.findByCountryName(country);
+    public ResponseEntity<List<PersonDto>> getPersonsByCountry(@RequestParam String country) {
+        List<PersonDto> persons = personService.findByCountryName(country);
         if (persons.isEmpty()) {
             return ResponseEntity.notFound().build();
         }
@@ -0,0 +1,51 @@
+package com.example.mylab.dto;
+
+import com.example.mylab.cache.StringPool;
+import com.example.mylab.model.Country;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+public class CountryDto {
+    private final Integer id;
+    private final String name;
+    private final String code;
+
+    // Countries nested in persons come from the join table projection and carry no version.
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private final Long version;
+
+    public CountryDto(Integer id, String name, String code) {
+        this(id, name, code, null);
+    }
+
+    public CountryDto(Integer id, String name, String code, Long version) {
+        this.id = id;
+        this.name = name;
+        this.code = code;
+        this.version = version;
+    }
+
+    public static CountryDto from(Country country) {
+        return new CountryDto(country.getId(), country.getName(), country.getCode(), country.getVersion());
+    }
+
+    // Names and codes repeat across every person's country rows, so cached DTOs share one instance of each.
+    public static CountryDto shared(Integer id, String name, String code, StringPool strings) {
+        return new CountryDto(id, strings.share(name), strings.share(code));
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.mylab.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+public class CountryUpsertResult {
+    public enum Status {
+        CREATED,
+        UPDATED,
+        UNCHANGED
+    }
+
+    private final Integer id;
+    private final String name;
+    private final String code;
+    private final Long version;
+    private final Status status;
+    private final String previousName;
+    private final String previousCode;
+    private final Integer personId;
+
+    public CountryUpsertResult(
+            Integer id,
+            String name,
+            String code,
+            Long version,
+            Status status,
+            String previousName,
+            String previousCode,
+            Integer personId) {
+        this.id = id;
+        this.name = name;
+        this.code = code;
+        this.version = version;
+        this.status = status;
+        this.previousName = previousName;
+        this.previousCode = previousCode;
+        this.personId = personId;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    @JsonIgnore
+    public String getPreviousName() {
+        return previousName;
+    }
+
+    @JsonIgnore
+    public String getPreviousCode() {
+        return previousCode;
+    }
+
+    @JsonIgnore
+    public Integer getPersonId() {
+        return personId;
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.mylab.dto;
+
+public interface PersonCountryView {
+    Integer getPersonId();
+
+    Integer getId();
+
+    String getName();
+
+    String getCode();
+}
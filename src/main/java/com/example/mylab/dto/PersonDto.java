@@ -0,0 +1,67 @@
+package com.example.mylab.dto;
+
+import com.example.mylab.model.Person;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class PersonDto {
+    private final Integer id;
+    private final String name;
+    private final String surname;
+    private final Long version;
+    private final List<CountryDto> countries;
+
+    public PersonDto(Integer id, String name, String surname) {
+        this(id, name, surname, null, List.of());
+    }
+
+    public PersonDto(Integer id, String name, String surname, Long version) {
+        this(id, name, surname, version, List.of());
+    }
+
+    public PersonDto(Integer id, String name, String surname, List<CountryDto> countries) {
+        this(id, name, surname, null, countries);
+    }
+
+    public PersonDto(Integer id, String name, String surname, Long version, List<CountryDto> countries) {
+        this.id = id;
+        this.name = name;
+        this.surname = surname;
+        this.version = version;
+        this.countries = List.copyOf(countries);
+    }
+
+    public static PersonDto from(Person person) {
+        List<CountryDto> countries = person.getCountries() == null
+                ? List.of()
+                : person.getCountries().stream()
+                .map(CountryDto::from)
+                .collect(Collectors.toList());
+        return new PersonDto(person.getId(), person.getName(), person.getSurname(), person.getVersion(), countries);
+    }
+
+    public PersonDto withCountries(List<CountryDto> countries) {
+        return new PersonDto(id, name, surname, version, countries);
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSurname() {
+        return surname;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public List<CountryDto> getCountries() {
+        return countries;
+    }
+}
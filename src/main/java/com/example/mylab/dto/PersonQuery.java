@@ -0,0 +1,72 @@
+package com.example.mylab.dto;
+
+public class PersonQuery {
+    public enum Sort {
+        ID,
+        NAME,
+        SURNAME,
+        COUNTRIES;
+
+        public static Sort parse(String value) {
+            for (Sort sort : values()) {
+                if (sort.name().equalsIgnoreCase(value)) {
+                    return sort;
+                }
+            }
+            throw new IllegalArgumentException("sort must be one of id, name, surname, countries");
+        }
+    }
+
+    private final String country;
+    private final String surnamePrefix;
+    private final int minCountries;
+    private final int maxCountries;
+    private final Sort sort;
+    private final boolean descending;
+    private final int limit;
+
+    public PersonQuery(
+            String country,
+            String surnamePrefix,
+            Integer minCountries,
+            Integer maxCountries,
+            Sort sort,
+            boolean descending,
+            int limit) {
+        this.country = country == null || country.isBlank() ? null : country;
+        this.surnamePrefix = surnamePrefix == null || surnamePrefix.isEmpty() ? null : surnamePrefix;
+        this.minCountries = minCountries == null ? 0 : minCountries;
+        this.maxCountries = maxCountries == null ? Integer.MAX_VALUE : maxCountries;
+        this.sort = sort == null ? Sort.ID : sort;
+        this.descending = descending;
+        this.limit = limit;
+    }
+
+    public String getCountry() {
+        return country;
+    }
+
+    public String getSurnamePrefix() {
+        return surnamePrefix;
+    }
+
+    public int getMinCountries() {
+        return minCountries;
+    }
+
+    public int getMaxCountries() {
+        return maxCountries;
+    }
+
+    public Sort getSort() {
+        return sort;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+}
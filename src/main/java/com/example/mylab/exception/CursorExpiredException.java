@@ -0,0 +1,14 @@
+package com.example.mylab.exception;
+
+public class CursorExpiredException extends RuntimeException {
+    private final long lastSequence;
+
+    public CursorExpiredException(long lastSequence) {
+        super("Cursor is older than the retained change history; re-fetch and resume from " + lastSequence);
+        this.lastSequence = lastSequence;
+    }
+
+    public long getLastSequence() {
+        return lastSequence;
+    }
+}
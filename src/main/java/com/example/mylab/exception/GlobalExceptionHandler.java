@@ -1,5 +1,6 @@
 package com.example.mylab.exception;
 
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.*;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -18,6 +19,24 @@ public class GlobalExceptionHandler extends ResponseEntityExceptionHandler {
         return ResponseEntity.badRequest().body(ex.getMessage());
     }
 
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<String> handleConflict(OptimisticLockingFailureException ex, WebRequest request) {
+        logger.warn("409 Error: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(ex.getMessage());
+    }
+
+    @ExceptionHandler(CursorExpiredException.class)
+    public ResponseEntity<String> handleCursorExpired(CursorExpiredException ex, WebRequest request) {
+        logger.warn("410 Error: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.GONE).body(ex.getMessage());
+    }
+
+    @ExceptionHandler(QueryBudgetExceededException.class)
+    public ResponseEntity<String> handleQueryBudgetExceeded(QueryBudgetExceededException ex, WebRequest request) {
+        logger.error("Query budget exceeded: {}", ex.getMessage());
+        return ResponseEntity.internalServerError().body(ex.getMessage());
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<String> handleInternalError(Exception ex, WebRequest request) {
         logger.error("500 Error: ", ex);
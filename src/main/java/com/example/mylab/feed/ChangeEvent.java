@@ -0,0 +1,51 @@
+package com.example.mylab.feed;
+
+import java.time.Instant;
+
+public class ChangeEvent {
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+
+    private final long sequence;
+    private final String entity;
+    private final Type type;
+    private final Integer id;
+    private final Object payload;
+    private final Instant timestamp;
+
+    public ChangeEvent(long sequence, String entity, Type type, Integer id, Object payload, Instant timestamp) {
+        this.sequence = sequence;
+        this.entity = entity;
+        this.type = type;
+        this.id = id;
+        this.payload = payload;
+        this.timestamp = timestamp;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public String getEntity() {
+        return entity;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public Object getPayload() {
+        return payload;
+    }
+
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+}
@@ -0,0 +1,254 @@
+package com.example.mylab.feed;
+
+import com.example.mylab.exception.CursorExpiredException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@Component
+public class ChangeFeed {
+    public static final String PERSON = "person";
+    public static final String COUNTRY = "country";
+
+    private static final Logger logger = LoggerFactory.getLogger(ChangeFeed.class);
+    private static final int MAX_EVENTS_PER_POLL = 1000;
+
+    private final ChangeEvent[] history;
+    private final int subscriberBufferSize;
+    private final long sseTimeoutMs;
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final List<Waiter> waiters = new ArrayList<>();
+    private final ExecutorService deliveryExecutor = Executors.newFixedThreadPool(2, runnable -> {
+        Thread thread = new Thread(runnable, "change-feed-delivery");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private long lastSequence;
+
+    public ChangeFeed(
+            @Value("${mylab.feed.history-size:10000}") int historySize,
+            @Value("${mylab.feed.subscriber-buffer-size:256}") int subscriberBufferSize,
+            @Value("${mylab.feed.sse-timeout-ms:1800000}") long sseTimeoutMs) {
+        this.history = new ChangeEvent[historySize];
+        this.subscriberBufferSize = subscriberBufferSize;
+        this.sseTimeoutMs = sseTimeoutMs;
+    }
+
+    // Inside a transaction the event is held back until commit, so subscribers never see rolled-back writes.
+    public void publish(String entity, ChangeEvent.Type type, Integer id, Object payload) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    append(entity, type, id, payload);
+                }
+            });
+        } else {
+            append(entity, type, id, payload);
+        }
+    }
+
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    // Returns null when the cursor is older than the retained history, or ahead of it because it was issued
+    // before a restart reset the sequence, and the client has to resync.
+    public synchronized List<ChangeEvent> eventsSince(long cursor, int limit) {
+        long oldest = Math.max(1, lastSequence - history.length + 1);
+        if (cursor + 1 < oldest || cursor > lastSequence) {
+            return null;
+        }
+        List<ChangeEvent> events = new ArrayList<>();
+        for (long sequence = Math.max(cursor + 1, oldest); sequence <= lastSequence && events.size() < limit; sequence++) {
+            events.add(history[(int) (sequence % history.length)]);
+        }
+        return events;
+    }
+
+    public SseEmitter subscribe(long cursor) {
+        SseEmitter emitter = new SseEmitter(sseTimeoutMs);
+        Subscriber subscriber = new Subscriber(emitter, subscriberBufferSize);
+        emitter.onCompletion(() -> detach(subscriber));
+        emitter.onTimeout(() -> detach(subscriber));
+        emitter.onError(error -> detach(subscriber));
+
+        synchronized (this) {
+            List<ChangeEvent> backlog = eventsSince(cursor, subscriberBufferSize + 1);
+            if (backlog == null || backlog.size() > subscriberBufferSize) {
+                deliveryExecutor.execute(() -> sendResync(subscriber));
+                return emitter;
+            }
+            backlog.forEach(subscriber.queue::offer);
+            subscribers.add(subscriber);
+        }
+        scheduleDrain(subscriber);
+        return emitter;
+    }
+
+    public DeferredResult<List<ChangeEvent>> poll(long cursor, long timeoutMs) {
+        DeferredResult<List<ChangeEvent>> result = new DeferredResult<>(timeoutMs, List.of());
+        synchronized (this) {
+            List<ChangeEvent> events = eventsSince(cursor, MAX_EVENTS_PER_POLL);
+            if (events == null) {
+                result.setErrorResult(new CursorExpiredException(lastSequence));
+                return result;
+            }
+            if (!events.isEmpty() || timeoutMs <= 0) {
+                result.setResult(events);
+                return result;
+            }
+            Waiter waiter = new Waiter(cursor, result);
+            waiters.add(waiter);
+            result.onCompletion(() -> removeWaiter(waiter));
+        }
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        deliveryExecutor.shutdownNow();
+        subscribers.forEach(subscriber -> subscriber.close(null));
+    }
+
+    private void append(String entity, ChangeEvent.Type type, Integer id, Object payload) {
+        List<Waiter> ready;
+        List<Subscriber> targets;
+        synchronized (this) {
+            ChangeEvent event = new ChangeEvent(++lastSequence, entity, type, id, payload, Instant.now());
+            history[(int) (event.getSequence() % history.length)] = event;
+            ready = new ArrayList<>(waiters);
+            waiters.clear();
+
+            // Offered under the lock that assigns the sequence: queues fill in sequence order, and subscribe()
+            // either finds the event in history or receives it here, never both.
+            targets = new ArrayList<>(subscribers);
+            for (Subscriber subscriber : targets) {
+                if (!subscriber.queue.offer(event)) {
+                    // Slow consumer: drop it instead of blocking writers; it resumes from its cursor.
+                    subscribers.remove(subscriber);
+                    subscriber.overflowed.set(true);
+                }
+            }
+        }
+
+        targets.forEach(this::scheduleDrain);
+        for (Waiter waiter : ready) {
+            List<ChangeEvent> events = eventsSince(waiter.cursor, MAX_EVENTS_PER_POLL);
+            if (events == null) {
+                waiter.result.setErrorResult(new CursorExpiredException(getLastSequence()));
+            } else {
+                waiter.result.setResult(events);
+            }
+        }
+    }
+
+    private void detach(Subscriber subscriber) {
+        subscriber.closed.set(true);
+        subscribers.remove(subscriber);
+    }
+
+    private synchronized void removeWaiter(Waiter waiter) {
+        waiters.remove(waiter);
+    }
+
+    private void scheduleDrain(Subscriber subscriber) {
+        if (subscriber.draining.compareAndSet(false, true)) {
+            deliveryExecutor.execute(() -> drain(subscriber));
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        if (subscriber.closed.get()) {
+            subscriber.draining.set(false);
+            return;
+        }
+        try {
+            ChangeEvent event;
+            while ((event = subscriber.queue.poll()) != null) {
+                subscriber.emitter.send(SseEmitter.event()
+                        .id(String.valueOf(event.getSequence()))
+                        .name(event.getEntity())
+                        .data(event, MediaType.APPLICATION_JSON));
+            }
+            if (subscriber.overflowed.get()) {
+                sendResync(subscriber);
+                return;
+            }
+        } catch (IOException | IllegalStateException e) {
+            logger.debug("Dropping change feed subscriber: {}", e.getMessage());
+            subscribers.remove(subscriber);
+            subscriber.close(e);
+            return;
+        } finally {
+            subscriber.draining.set(false);
+        }
+        if (!subscriber.queue.isEmpty() || subscriber.overflowed.get()) {
+            scheduleDrain(subscriber);
+        }
+    }
+
+    private void sendResync(Subscriber subscriber) {
+        try {
+            subscriber.emitter.send(SseEmitter.event()
+                    .name("resync")
+                    .data(Map.of("lastSequence", getLastSequence()), MediaType.APPLICATION_JSON));
+            subscriber.close(null);
+        } catch (IOException | IllegalStateException e) {
+            subscriber.close(e);
+        }
+    }
+
+    private static final class Subscriber {
+        private final SseEmitter emitter;
+        private final BlockingQueue<ChangeEvent> queue;
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicBoolean overflowed = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Subscriber(SseEmitter emitter, int bufferSize) {
+            this.emitter = emitter;
+            this.queue = new ArrayBlockingQueue<>(bufferSize);
+        }
+
+        private void close(Throwable error) {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            if (error == null) {
+                emitter.complete();
+            } else {
+                emitter.completeWithError(error);
+            }
+        }
+    }
+
+    private static final class Waiter {
+        private final long cursor;
+        private final DeferredResult<List<ChangeEvent>> result;
+
+        private Waiter(long cursor, DeferredResult<List<ChangeEvent>> result) {
+            this.cursor = cursor;
+            this.result = result;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.mylab.metrics;
+
+import org.slf4j.MDC;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.UUID;
+
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class CorrelationIdFilter extends OncePerRequestFilter {
+    public static final String HEADER = "X-Correlation-Id";
+    public static final String MDC_KEY = "correlationId";
+    private static final int MAX_LENGTH = 64;
+
+    private final DbMetrics dbMetrics;
+    private final QueryBudgetDetector queryBudgetDetector;
+
+    public CorrelationIdFilter(DbMetrics dbMetrics, QueryBudgetDetector queryBudgetDetector) {
+        this.dbMetrics = dbMetrics;
+        this.queryBudgetDetector = queryBudgetDetector;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String correlationId = request.getHeader(HEADER);
+        if (correlationId == null || correlationId.isBlank() || correlationId.length() > MAX_LENGTH) {
+            correlationId = UUID.randomUUID().toString();
+        }
+
+        MDC.put(MDC_KEY, correlationId);
+        response.setHeader(HEADER, correlationId);
+        String description = request.getMethod() + " " + request.getRequestURI();
+        DbRequestContext context = DbRequestContext.start(correlationId, description);
+        QueryScope scope = QueryScope.open(description);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            scope.close();
+            queryBudgetDetector.onClose(scope);
+            dbMetrics.recordRequest(context);
+            DbRequestContext.end();
+            MDC.remove(MDC_KEY);
+        }
+    }
+}
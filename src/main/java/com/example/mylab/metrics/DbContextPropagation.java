@@ -0,0 +1,44 @@
+package com.example.mylab.metrics;
+
+import org.slf4j.MDC;
+
+import java.util.Deque;
+import java.util.Map;
+
+public final class DbContextPropagation {
+
+    private DbContextPropagation() {
+    }
+
+    // Captures the caller's request context, query scopes and MDC, installs them around the task on whatever
+    // thread runs it, and puts back what that thread had before.
+    public static Runnable wrap(Runnable task) {
+        DbRequestContext context = DbRequestContext.current();
+        Deque<QueryScope> scopes = QueryScope.snapshot();
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+        return () -> {
+            DbRequestContext previousContext = DbRequestContext.current();
+            Deque<QueryScope> previousScopes = QueryScope.snapshot();
+            boolean previousPropagated = QueryScope.isPropagated();
+            Map<String, String> previousMdc = MDC.getCopyOfContextMap();
+            DbRequestContext.set(context);
+            QueryScope.install(scopes, true);
+            setMdc(mdc);
+            try {
+                task.run();
+            } finally {
+                DbRequestContext.set(previousContext);
+                QueryScope.install(previousScopes, previousPropagated);
+                setMdc(previousMdc);
+            }
+        };
+    }
+
+    private static void setMdc(Map<String, String> mdc) {
+        if (mdc == null) {
+            MDC.clear();
+        } else {
+            MDC.setContextMap(mdc);
+        }
+    }
+}
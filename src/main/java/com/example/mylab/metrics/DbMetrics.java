@@ -0,0 +1,130 @@
+package com.example.mylab.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+@Component
+public class DbMetrics {
+    private static final Logger logger = LoggerFactory.getLogger(DbMetrics.class);
+    private static final int MAX_TRACKED_STATEMENTS = 500;
+    private static final int MAX_SLOW_QUERIES = 50;
+    private static final String OTHER_STATEMENTS = "<other>";
+
+    private final long slowQueryThresholdNanos;
+    private final QueryBudgetDetector queryBudgetDetector;
+    private final ConcurrentMap<String, Histogram> repositoryCalls = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Histogram> statements = new ConcurrentHashMap<>();
+    private final Histogram connectionWait = new Histogram(Histogram.LATENCY_MICROS_BOUNDS);
+    private final Histogram statementsPerRequest = new Histogram(Histogram.COUNT_BOUNDS);
+    private final Deque<Map<String, Object>> slowQueries = new ConcurrentLinkedDeque<>();
+
+    public DbMetrics(
+            @Value("${mylab.db.slow-query-threshold-ms:200}") long slowQueryThresholdMs,
+            QueryBudgetDetector queryBudgetDetector) {
+        this.slowQueryThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowQueryThresholdMs);
+        this.queryBudgetDetector = queryBudgetDetector;
+    }
+
+    public void recordRepositoryCall(String method, long nanos) {
+        repositoryCalls.computeIfAbsent(method, k -> new Histogram(Histogram.LATENCY_MICROS_BOUNDS))
+                .record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    public void recordStatement(String sql, long nanos) {
+        String shape = SqlShape.of(sql);
+        statementHistogram(shape).record(TimeUnit.NANOSECONDS.toMicros(nanos));
+
+        DbRequestContext context = DbRequestContext.current();
+        if (context != null) {
+            context.onStatement(nanos);
+        }
+        if (nanos >= slowQueryThresholdNanos) {
+            recordSlowQuery(shape, nanos, context);
+        }
+        QueryScope.forEachActive(scope -> scope.record(shape));
+    }
+
+    // Scopes carried onto cache refresh threads are recorded but never enforced: the request that opened them
+    // may already have finished.
+    public void enforceQueryBudget() {
+        if (!QueryScope.isPropagated()) {
+            QueryScope.forEachActive(queryBudgetDetector::onStatement);
+        }
+    }
+
+    public void recordConnectionWait(long nanos) {
+        connectionWait.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+        DbRequestContext context = DbRequestContext.current();
+        if (context != null) {
+            context.onConnectionAcquired(nanos);
+        }
+    }
+
+    public void recordRequest(DbRequestContext context) {
+        statementsPerRequest.record(context.getStatementCount());
+        if (context.getStatementCount() > 0) {
+            logger.debug("DB usage for {}: {} statements, {} ms in statements, {} ms waiting for connections",
+                    context.getDescription(),
+                    context.getStatementCount(),
+                    TimeUnit.NANOSECONDS.toMillis(context.getStatementNanos()),
+                    TimeUnit.NANOSECONDS.toMillis(context.getConnectionWaitNanos()));
+        }
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("slowQueryThresholdMs", TimeUnit.NANOSECONDS.toMillis(slowQueryThresholdNanos));
+        result.put("statementsPerRequest", statementsPerRequest.snapshot());
+        result.put("connectionWaitMicros", connectionWait.snapshot());
+        result.put("repositoryCallMicros", snapshotOf(repositoryCalls));
+        result.put("statementMicros", snapshotOf(statements));
+        result.put("slowQueries", new ArrayList<>(slowQueries));
+        return result;
+    }
+
+    private Histogram statementHistogram(String shape) {
+        Histogram histogram = statements.get(shape);
+        if (histogram != null) {
+            return histogram;
+        }
+        String key = statements.size() < MAX_TRACKED_STATEMENTS ? shape : OTHER_STATEMENTS;
+        return statements.computeIfAbsent(key, k -> new Histogram(Histogram.LATENCY_MICROS_BOUNDS));
+    }
+
+    private void recordSlowQuery(String shape, long nanos, DbRequestContext context) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        String correlationId = context != null ? context.getCorrelationId() : null;
+        String request = context != null ? context.getDescription() : null;
+        logger.warn("Slow query ({} ms, request {} {}): {}", millis, correlationId, request, shape);
+
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("at", Instant.now().toString());
+        entry.put("durationMs", millis);
+        entry.put("correlationId", correlationId);
+        entry.put("request", request);
+        entry.put("sql", shape);
+        slowQueries.addFirst(entry);
+        while (slowQueries.size() > MAX_SLOW_QUERIES) {
+            slowQueries.pollLast();
+        }
+    }
+
+    private static Map<String, Object> snapshotOf(Map<String, Histogram> histograms) {
+        Map<String, Object> result = new TreeMap<>();
+        histograms.forEach((key, histogram) -> result.put(key, histogram.snapshot()));
+        return result;
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.mylab.metrics;
+
+public final class DbRequestContext {
+    private static final ThreadLocal<DbRequestContext> CURRENT = new ThreadLocal<>();
+
+    private final String correlationId;
+    private final String description;
+    private int statementCount;
+    private long statementNanos;
+    private long connectionWaitNanos;
+
+    private DbRequestContext(String correlationId, String description) {
+        this.correlationId = correlationId;
+        this.description = description;
+    }
+
+    public static DbRequestContext start(String correlationId, String description) {
+        DbRequestContext context = new DbRequestContext(correlationId, description);
+        CURRENT.set(context);
+        return context;
+    }
+
+    public static DbRequestContext current() {
+        return CURRENT.get();
+    }
+
+    public static void end() {
+        CURRENT.remove();
+    }
+
+    static void set(DbRequestContext context) {
+        if (context == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(context);
+        }
+    }
+
+    // Synchronized because cache refresh threads record into the context of the request that started the load.
+    synchronized void onStatement(long nanos) {
+        statementCount++;
+        statementNanos += nanos;
+    }
+
+    synchronized void onConnectionAcquired(long nanos) {
+        connectionWaitNanos += nanos;
+    }
+
+    public String getCorrelationId() {
+        return correlationId;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public synchronized int getStatementCount() {
+        return statementCount;
+    }
+
+    public synchronized long getStatementNanos() {
+        return statementNanos;
+    }
+
+    public synchronized long getConnectionWaitNanos() {
+        return connectionWaitNanos;
+    }
+}
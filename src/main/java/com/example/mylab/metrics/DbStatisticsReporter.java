@@ -0,0 +1,72 @@
+package com.example.mylab.metrics;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Component
+public class DbStatisticsReporter {
+    private final DbMetrics dbMetrics;
+    private final EntityManagerFactory entityManagerFactory;
+    private final DataSource dataSource;
+
+    public DbStatisticsReporter(DbMetrics dbMetrics, EntityManagerFactory entityManagerFactory, DataSource dataSource) {
+        this.dbMetrics = dbMetrics;
+        this.entityManagerFactory = entityManagerFactory;
+        this.dataSource = dataSource;
+    }
+
+    public Map<String, Object> report() {
+        Map<String, Object> result = dbMetrics.snapshot();
+        result.put("pool", poolStatistics());
+        result.put("hibernate", hibernateStatistics());
+        return result;
+    }
+
+    private Map<String, Object> poolStatistics() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        try {
+            if (!dataSource.isWrapperFor(HikariDataSource.class)) {
+                return result;
+            }
+            HikariPoolMXBean pool = dataSource.unwrap(HikariDataSource.class).getHikariPoolMXBean();
+            if (pool != null) {
+                result.put("active", pool.getActiveConnections());
+                result.put("idle", pool.getIdleConnections());
+                result.put("total", pool.getTotalConnections());
+                result.put("threadsAwaitingConnection", pool.getThreadsAwaitingConnection());
+            }
+        } catch (SQLException e) {
+            result.put("error", e.getMessage());
+        }
+        return result;
+    }
+
+    private Map<String, Object> hibernateStatistics() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", statistics.isStatisticsEnabled());
+        result.put("sessionsOpened", statistics.getSessionOpenCount());
+        result.put("sessionsClosed", statistics.getSessionCloseCount());
+        result.put("transactions", statistics.getTransactionCount());
+        result.put("connectionsObtained", statistics.getConnectCount());
+        result.put("statementsPrepared", statistics.getPrepareStatementCount());
+        result.put("flushes", statistics.getFlushCount());
+        result.put("queriesExecuted", statistics.getQueryExecutionCount());
+        result.put("slowestQueryMs", statistics.getQueryExecutionMaxTime());
+        result.put("slowestQuery", statistics.getQueryExecutionMaxTimeQueryString());
+        result.put("entitiesLoaded", statistics.getEntityLoadCount());
+        result.put("entitiesFetched", statistics.getEntityFetchCount());
+        result.put("collectionsLoaded", statistics.getCollectionLoadCount());
+        result.put("collectionsFetched", statistics.getCollectionFetchCount());
+        return result;
+    }
+}
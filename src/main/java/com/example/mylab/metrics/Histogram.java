@@ -0,0 +1,57 @@
+package com.example.mylab.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class Histogram {
+    public static final long[] LATENCY_MICROS_BOUNDS = {
+        250, 500, 1_000, 2_500, 5_000, 10_000, 25_000, 50_000, 100_000, 250_000, 500_000, 1_000_000, 5_000_000
+    };
+    public static final long[] COUNT_BOUNDS = {0, 1, 2, 3, 5, 10, 20, 50, 100, 500};
+
+    private final long[] bounds;
+    private final AtomicLongArray buckets;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public Histogram(long[] bounds) {
+        this.bounds = bounds;
+        this.buckets = new AtomicLongArray(bounds.length + 1);
+    }
+
+    public void record(long value) {
+        int bucket = 0;
+        while (bucket < bounds.length && value > bounds[bucket]) {
+            bucket++;
+        }
+        buckets.incrementAndGet(bucket);
+        count.increment();
+        sum.add(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public Map<String, Object> snapshot() {
+        long total = count.sum();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("count", total);
+        result.put("sum", sum.sum());
+        result.put("mean", total == 0 ? 0 : sum.sum() / total);
+        result.put("max", max.get());
+
+        Map<String, Long> bucketCounts = new LinkedHashMap<>();
+        for (int i = 0; i < bounds.length; i++) {
+            bucketCounts.put("le_" + bounds[i], buckets.get(i));
+        }
+        bucketCounts.put("le_inf", buckets.get(bounds.length));
+        result.put("buckets", bucketCounts);
+        return result;
+    }
+}
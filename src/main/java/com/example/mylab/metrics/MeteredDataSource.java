@@ -0,0 +1,90 @@
+package com.example.mylab.metrics;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+public class MeteredDataSource extends DelegatingDataSource {
+    private final DbMetrics dbMetrics;
+
+    public MeteredDataSource(DataSource targetDataSource, DbMetrics dbMetrics) {
+        super(targetDataSource);
+        this.dbMetrics = dbMetrics;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        Connection connection = super.getConnection();
+        dbMetrics.recordConnectionWait(System.nanoTime() - start);
+        return wrapConnection(connection);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        long start = System.nanoTime();
+        Connection connection = super.getConnection(username, password);
+        dbMetrics.recordConnectionWait(System.nanoTime() - start);
+        return wrapConnection(connection);
+    }
+
+    private Connection wrapConnection(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    Object result = invoke(connection, method, args);
+                    switch (method.getName()) {
+                        case "prepareCall":
+                            return wrapStatement((Statement) result, CallableStatement.class, (String) args[0]);
+                        case "prepareStatement":
+                            return wrapStatement((Statement) result, PreparedStatement.class, (String) args[0]);
+                        case "createStatement":
+                            return wrapStatement((Statement) result, Statement.class, null);
+                        default:
+                            return result;
+                    }
+                });
+    }
+
+    private Statement wrapStatement(Statement statement, Class<? extends Statement> type, String preparedSql) {
+        return (Statement) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    if (!method.getName().startsWith("execute")) {
+                        return invoke(statement, method, args);
+                    }
+                    String sql = preparedSql;
+                    if (sql == null) {
+                        sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : "<batch>";
+                    }
+                    long start = System.nanoTime();
+                    Object result;
+                    try {
+                        result = invoke(statement, method, args);
+                    } finally {
+                        dbMetrics.recordStatement(sql, System.nanoTime() - start);
+                    }
+                    // Only a statement that succeeded can fail the budget, so its own SQLException is never hidden.
+                    dbMetrics.enforceQueryBudget();
+                    return result;
+                });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.mylab.metrics;
+
+import com.example.mylab.exception.QueryBudgetExceededException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Component
+public class QueryBudgetDetector {
+    private static final Logger logger = LoggerFactory.getLogger(QueryBudgetDetector.class);
+
+    private final boolean enabled;
+    private final boolean failOnViolation;
+    private final int maxStatements;
+    private final int maxRepeats;
+
+    public QueryBudgetDetector(
+            @Value("${mylab.db.query-budget.enabled:false}") boolean enabled,
+            @Value("${mylab.db.query-budget.fail-on-violation:false}") boolean failOnViolation,
+            @Value("${mylab.db.query-budget.max-statements:50}") int maxStatements,
+            @Value("${mylab.db.query-budget.max-repeats:10}") int maxRepeats) {
+        this.enabled = enabled;
+        this.failOnViolation = failOnViolation;
+        this.maxStatements = maxStatements;
+        this.maxRepeats = maxRepeats;
+    }
+
+    void onStatement(QueryScope scope) {
+        if (!enabled || !failOnViolation || scope.isViolationReported()) {
+            return;
+        }
+        String violation = violation(scope);
+        if (violation != null) {
+            scope.markViolationReported();
+            throw new QueryBudgetExceededException(violation);
+        }
+    }
+
+    public void onClose(QueryScope scope) {
+        if (!enabled || scope.isViolationReported()) {
+            return;
+        }
+        String violation = violation(scope);
+        if (violation != null) {
+            scope.markViolationReported();
+            logger.warn("Query budget exceeded: {}", violation);
+        }
+    }
+
+    public String violation(QueryScope scope) {
+        if (scope.getStatementCount() > maxStatements) {
+            return String.format("%s issued %d statements (budget %d)",
+                    scope.getName(), scope.getStatementCount(), maxStatements);
+        }
+        if (scope.getMaxRepeats() > maxRepeats) {
+            return String.format("%s repeated one statement %d times (budget %d), likely N+1: %s",
+                    scope.getName(), scope.getMaxRepeats(), maxRepeats, scope.getMostRepeatedShape());
+        }
+        return null;
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.mylab.metrics;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+public final class QueryScope implements AutoCloseable {
+    // Left unset on threads that never open a scope, so statements there leave nothing behind.
+    private static final ThreadLocal<Deque<QueryScope>> ACTIVE = new ThreadLocal<>();
+    private static final ThreadLocal<Boolean> PROPAGATED = new ThreadLocal<>();
+
+    private final String name;
+    private final Map<String, Integer> shapeCounts = new HashMap<>();
+    private int statementCount;
+    private boolean violationReported;
+
+    private QueryScope(String name) {
+        this.name = name;
+    }
+
+    public static QueryScope open(String name) {
+        QueryScope scope = new QueryScope(name);
+        Deque<QueryScope> scopes = ACTIVE.get();
+        if (scopes == null) {
+            scopes = new ArrayDeque<>();
+            ACTIVE.set(scopes);
+        }
+        scopes.push(scope);
+        return scope;
+    }
+
+    static void forEachActive(Consumer<QueryScope> action) {
+        Deque<QueryScope> scopes = ACTIVE.get();
+        if (scopes != null) {
+            scopes.forEach(action);
+        }
+    }
+
+    static Deque<QueryScope> snapshot() {
+        Deque<QueryScope> scopes = ACTIVE.get();
+        return scopes == null ? null : new ArrayDeque<>(scopes);
+    }
+
+    static void install(Deque<QueryScope> scopes, boolean propagated) {
+        if (scopes == null || scopes.isEmpty()) {
+            ACTIVE.remove();
+        } else {
+            ACTIVE.set(scopes);
+        }
+        if (propagated) {
+            PROPAGATED.set(Boolean.TRUE);
+        } else {
+            PROPAGATED.remove();
+        }
+    }
+
+    static boolean isPropagated() {
+        return PROPAGATED.get() != null;
+    }
+
+    // Synchronized because cache refresh threads record into the scopes of the request that started the load.
+    synchronized void record(String shape) {
+        statementCount++;
+        shapeCounts.merge(shape, 1, Integer::sum);
+    }
+
+    synchronized boolean isViolationReported() {
+        return violationReported;
+    }
+
+    synchronized void markViolationReported() {
+        violationReported = true;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized int getStatementCount() {
+        return statementCount;
+    }
+
+    public synchronized int getMaxRepeats() {
+        return shapeCounts.values().stream().max(Integer::compare).orElse(0);
+    }
+
+    public synchronized String getMostRepeatedShape() {
+        return shapeCounts.entrySet().stream()
+                .max(Map.Entry.comparingByValue())
+                .map(Map.Entry::getKey)
+                .orElse(null);
+    }
+
+    public synchronized Map<String, Integer> getShapeCounts() {
+        return Collections.unmodifiableMap(new HashMap<>(shapeCounts));
+    }
+
+    @Override
+    public void close() {
+        Deque<QueryScope> scopes = ACTIVE.get();
+        if (scopes == null) {
+            return;
+        }
+        scopes.remove(this);
+        if (scopes.isEmpty()) {
+            ACTIVE.remove();
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.mylab.metrics;
+
+import java.util.regex.Pattern;
+
+public final class SqlShape {
+    private static final int MAX_LENGTH = 300;
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w.])-?\\d+(?:\\.\\d+)?(?![\\w.])");
+    private static final Pattern PARAMETER_LIST = Pattern.compile("\\?(?:\\s*,\\s*\\?)+");
+    private static final Pattern ROW_LIST = Pattern.compile("\\(\\s*\\?\\s*\\)(?:\\s*,\\s*\\(\\s*\\?\\s*\\))+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private SqlShape() {
+    }
+
+    // Literals become '?' and parameter/VALUES lists collapse, so an IN list of any size is one shape.
+    public static String of(String sql) {
+        if (sql == null) {
+            return "";
+        }
+        String shape = WHITESPACE.matcher(sql.trim()).replaceAll(" ");
+        shape = STRING_LITERAL.matcher(shape).replaceAll("?");
+        shape = NUMBER_LITERAL.matcher(shape).replaceAll("?");
+        shape = PARAMETER_LIST.matcher(shape).replaceAll("?");
+        shape = ROW_LIST.matcher(shape).replaceAll("(?)");
+        return shape.length() > MAX_LENGTH ? shape.substring(0, MAX_LENGTH) + "..." : shape;
+    }
+}
@@ -2,11 +2,11 @@ package com.example.mylab.model;
 
 import javax.persistence.*;
 
-        import com.fasterxml.jackson.annotation.JsonIdentityInfo;
-import com.fasterxml.jackson.annotation.ObjectIdGenerators;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 
+// Codes are unique only among reference countries (no person); the partial index lives in
+// db/migration/001_country_reference_code.sql because JPA cannot declare it.
 @Entity
-@JsonIdentityInfo(generator = ObjectIdGenerators.PropertyGenerator.class, property = "id")
 public class Country {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -18,6 +18,11 @@ public class Country {
     @Column(nullable = false, length = 3)
     private String code;
 
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private Long version;
+
+    @JsonIgnore
     @ManyToOne
     @JoinColumn(name = "person_id")
     private Person person;
@@ -60,6 +65,14 @@ public class Country {
         this.code = code;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     public Person getPerson() {
         return person;
     }
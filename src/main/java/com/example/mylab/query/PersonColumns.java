@@ -0,0 +1,131 @@
+package com.example.mylab.query;
+
+import com.example.mylab.dto.CountryDto;
+import com.example.mylab.dto.PersonDto;
+import com.example.mylab.dto.PersonQuery;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+// Column-per-field copy of the cached persons in id order, so scans read flat arrays instead of DTO graphs.
+public final class PersonColumns {
+    private static final int MIN_LEAF_SIZE = 1024;
+
+    private final PersonDto[] rows;
+    private final String[] names;
+    private final String[] surnames;
+    private final String[] lowerSurnames;
+    private final int[] countryCounts;
+    // Sorted row numbers per lower-cased country name and code; sized by memberships, not by persons.
+    private final Map<String, int[]> rowsByCountry = new HashMap<>();
+
+    public PersonColumns(List<PersonDto> persons) {
+        this.rows = persons.toArray(new PersonDto[0]);
+        Arrays.sort(rows, Comparator.comparing(PersonDto::getId));
+
+        names = new String[rows.length];
+        surnames = new String[rows.length];
+        lowerSurnames = new String[rows.length];
+        countryCounts = new int[rows.length];
+        Map<String, Postings> postings = new HashMap<>();
+        for (int row = 0; row < rows.length; row++) {
+            PersonDto person = rows[row];
+            names[row] = person.getName();
+            surnames[row] = person.getSurname();
+            lowerSurnames[row] = lower(person.getSurname());
+            countryCounts[row] = person.getCountries().size();
+            for (CountryDto country : person.getCountries()) {
+                markCountry(postings, country.getName(), row);
+                markCountry(postings, country.getCode(), row);
+            }
+        }
+        postings.forEach((key, rowList) -> rowsByCountry.put(key, rowList.toArray()));
+    }
+
+    public List<PersonDto> query(PersonQuery query, ForkJoinPool pool) {
+        int[] candidates = null;
+        if (query.getCountry() != null) {
+            candidates = rowsByCountry.get(lower(query.getCountry()));
+            if (candidates == null) {
+                return List.of();
+            }
+        }
+
+        int size = candidates == null ? rows.length : candidates.length;
+        int leafSize = Math.max(MIN_LEAF_SIZE, size / (pool.getParallelism() * 4));
+        PersonScan scan = new PersonScan(
+                this, candidates, lower(query.getSurnamePrefix()), query.getMinCountries(), query.getMaxCountries(),
+                query.getSort() == PersonQuery.Sort.ID, query.isDescending(),
+                comparator(query.getSort(), query.isDescending()), query.getLimit(), 0, size, leafSize);
+        return pool.invoke(scan).stream()
+                .map(row -> rows[row])
+                .collect(Collectors.toList());
+    }
+
+    int countryCount(int row) {
+        return countryCounts[row];
+    }
+
+    String lowerSurname(int row) {
+        return lowerSurnames[row];
+    }
+
+    // Ties are broken by id, so results are stable across scans and leaf boundaries.
+    private Comparator<Integer> comparator(PersonQuery.Sort sort, boolean descending) {
+        Comparator<Integer> order;
+        switch (sort) {
+            case NAME:
+                order = Comparator.comparing(row -> names[row], Comparator.nullsLast(Comparator.naturalOrder()));
+                break;
+            case SURNAME:
+                order = Comparator.comparing(row -> surnames[row], Comparator.nullsLast(Comparator.naturalOrder()));
+                break;
+            case COUNTRIES:
+                order = Comparator.comparingInt(row -> countryCounts[row]);
+                break;
+            default:
+                order = Comparator.naturalOrder();
+                break;
+        }
+        if (descending) {
+            order = order.reversed();
+        }
+        return sort == PersonQuery.Sort.ID ? order : order.thenComparing(Comparator.naturalOrder());
+    }
+
+    private static void markCountry(Map<String, Postings> postings, String key, int row) {
+        if (key != null) {
+            postings.computeIfAbsent(lower(key), k -> new Postings()).add(row);
+        }
+    }
+
+    private static String lower(String value) {
+        return value == null ? null : value.toLowerCase(Locale.ROOT);
+    }
+
+    // Rows arrive in ascending order, so skipping a repeat of the last row keeps the list sorted and distinct.
+    private static final class Postings {
+        private int[] rows = new int[4];
+        private int size;
+
+        private void add(int row) {
+            if (size > 0 && rows[size - 1] == row) {
+                return;
+            }
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+            }
+            rows[size++] = row;
+        }
+
+        private int[] toArray() {
+            return Arrays.copyOf(rows, size);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.mylab.query;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.RecursiveTask;
+
+// Each leaf keeps only its best `limit` rows. Rows are stored in id order, so an id-sorted leaf can stop as
+// soon as it has enough matches instead of scanning to the end of its range. With a country filter the range
+// indexes that country's sorted posting list instead of all rows.
+final class PersonScan extends RecursiveTask<List<Integer>> {
+    private final PersonColumns columns;
+    private final int[] candidates;
+    private final String surnamePrefix;
+    private final int minCountries;
+    private final int maxCountries;
+    private final boolean idOrder;
+    private final boolean descending;
+    private final Comparator<Integer> order;
+    private final int limit;
+    private final int from;
+    private final int to;
+    private final int leafSize;
+
+    PersonScan(
+            PersonColumns columns,
+            int[] candidates,
+            String surnamePrefix,
+            int minCountries,
+            int maxCountries,
+            boolean idOrder,
+            boolean descending,
+            Comparator<Integer> order,
+            int limit,
+            int from,
+            int to,
+            int leafSize) {
+        this.columns = columns;
+        this.candidates = candidates;
+        this.surnamePrefix = surnamePrefix;
+        this.minCountries = minCountries;
+        this.maxCountries = maxCountries;
+        this.idOrder = idOrder;
+        this.descending = descending;
+        this.order = order;
+        this.limit = limit;
+        this.from = from;
+        this.to = to;
+        this.leafSize = leafSize;
+    }
+
+    @Override
+    protected List<Integer> compute() {
+        if (to - from <= leafSize) {
+            return idOrder ? scanInIdOrder() : scanTopK();
+        }
+        int middle = (from + to) >>> 1;
+        PersonScan left = split(from, middle);
+        PersonScan right = split(middle, to);
+        left.fork();
+        List<Integer> rightRows = right.compute();
+        return merge(left.join(), rightRows);
+    }
+
+    private PersonScan split(int splitFrom, int splitTo) {
+        return new PersonScan(columns, candidates, surnamePrefix, minCountries, maxCountries,
+                idOrder, descending, order, limit, splitFrom, splitTo, leafSize);
+    }
+
+    private List<Integer> scanInIdOrder() {
+        List<Integer> result = new ArrayList<>();
+        if (descending) {
+            for (int i = to - 1; i >= from && result.size() < limit; i--) {
+                int row = row(i);
+                if (matches(row)) {
+                    result.add(row);
+                }
+            }
+        } else {
+            for (int i = from; i < to && result.size() < limit; i++) {
+                int row = row(i);
+                if (matches(row)) {
+                    result.add(row);
+                }
+            }
+        }
+        return result;
+    }
+
+    private List<Integer> scanTopK() {
+        PriorityQueue<Integer> worstFirst = new PriorityQueue<>(limit + 1, order.reversed());
+        for (int i = from; i < to; i++) {
+            int row = row(i);
+            if (matches(row)) {
+                worstFirst.add(row);
+                if (worstFirst.size() > limit) {
+                    worstFirst.poll();
+                }
+            }
+        }
+        List<Integer> result = new ArrayList<>(worstFirst);
+        result.sort(order);
+        return result;
+    }
+
+    private int row(int index) {
+        return candidates == null ? index : candidates[index];
+    }
+
+    private boolean matches(int row) {
+        if (surnamePrefix != null) {
+            String surname = columns.lowerSurname(row);
+            if (surname == null || !surname.startsWith(surnamePrefix)) {
+                return false;
+            }
+        }
+        int countries = columns.countryCount(row);
+        return countries >= minCountries && countries <= maxCountries;
+    }
+
+    private List<Integer> merge(List<Integer> left, List<Integer> right) {
+        List<Integer> result = new ArrayList<>(Math.min(limit, left.size() + right.size()));
+        int i = 0;
+        int j = 0;
+        while (result.size() < limit && (i < left.size() || j < right.size())) {
+            if (j == right.size() || (i < left.size() && order.compare(left.get(i), right.get(j)) <= 0)) {
+                result.add(left.get(i++));
+            } else {
+                result.add(right.get(j++));
+            }
+        }
+        return result;
+    }
+}
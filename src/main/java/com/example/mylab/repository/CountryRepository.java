@@ -1,13 +1,29 @@
 package com.example.mylab.repository;
 
+import com.example.mylab.dto.CountryDto;
 import com.example.mylab.model.Country;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface CountryRepository extends JpaRepository<Country, Integer> {
-    Optional<Country> findByName(String name);
-    Optional<Country> findByCode(String code);
+public interface CountryRepository extends JpaRepository<Country, Integer>, CountryRepositoryCustom {
+    // Lookups cover reference countries only; person countries may repeat names and codes.
+    Optional<Country> findFirstByNameAndPersonIsNullOrderByIdAsc(String name);
+    Optional<Country> findByCodeAndPersonIsNull(String code);
+
+    @Modifying(clearAutomatically = true)
+    @Query("DELETE FROM Country c WHERE c.id = :id")
+    int deleteByIdReturningCount(@Param("id") Integer id);
+
+    @Query("SELECT new com.example.mylab.dto.CountryDto(c.id, c.name, c.code, c.version) FROM Country c ORDER BY c.id")
+    List<CountryDto> findAllDtos();
+
+    @Query("SELECT new com.example.mylab.dto.CountryDto(c.id, c.name, c.code, c.version) FROM Country c WHERE c.id = :id")
+    Optional<CountryDto> findDtoById(@Param("id") Integer id);
 }
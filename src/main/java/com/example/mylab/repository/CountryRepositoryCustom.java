@@ -0,0 +1,14 @@
+package com.example.mylab.repository;
+
+import com.example.mylab.dto.CountryUpsertResult;
+import com.example.mylab.model.Country;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface CountryRepositoryCustom {
+    List<CountryUpsertResult> upsertAllByCode(List<Country> countries);
+
+    // Empty when the country does not exist; a stale expectedVersion throws OptimisticLockingFailureException.
+    Optional<CountryUpsertResult> updateIfVersionMatches(Integer id, String name, String code, Long expectedVersion);
+}
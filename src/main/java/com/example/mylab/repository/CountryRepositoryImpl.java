@@ -0,0 +1,103 @@
+package com.example.mylab.repository;
+
+import com.example.mylab.dto.CountryUpsertResult;
+import com.example.mylab.model.Country;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+public class CountryRepositoryImpl implements CountryRepositoryCustom {
+    private static final int UPSERT_BATCH_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public CountryRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public List<CountryUpsertResult> upsertAllByCode(List<Country> countries) {
+        List<CountryUpsertResult> results = new ArrayList<>(countries.size());
+        for (int from = 0; from < countries.size(); from += UPSERT_BATCH_SIZE) {
+            results.addAll(upsertBatch(countries.subList(from, Math.min(from + UPSERT_BATCH_SIZE, countries.size()))));
+        }
+        return results;
+    }
+
+    // Only reference countries (person_id IS NULL) are upserted; person countries may share a code.
+    // Codes must be unique within a batch: ON CONFLICT cannot touch the same row twice in one statement.
+    private List<CountryUpsertResult> upsertBatch(List<Country> batch) {
+        Object[] args = new Object[batch.size() * 3];
+        for (int i = 0; i < batch.size(); i++) {
+            args[i * 3] = i;
+            args[i * 3 + 1] = batch.get(i).getName();
+            args[i * 3 + 2] = batch.get(i).getCode();
+        }
+
+        String sql = "WITH input (ord, name, code) AS (VALUES "
+                + String.join(", ", Collections.nCopies(batch.size(), "(?, ?, ?)")) + "), "
+                + "upserted AS ("
+                + "INSERT INTO country (name, code, version) SELECT name, code, 0 FROM input "
+                + "ON CONFLICT (code) WHERE person_id IS NULL DO UPDATE SET name = EXCLUDED.name, version = country.version + 1 "
+                + "WHERE country.name IS DISTINCT FROM EXCLUDED.name "
+                + "RETURNING id, code, version, (xmax = 0) AS inserted) "
+                + "SELECT COALESCE(u.id, c.id) AS id, i.name, i.code, COALESCE(u.version, c.version) AS version, "
+                + "c.name AS previous_name, c.code AS previous_code, "
+                + "CASE WHEN u.id IS NULL THEN 'UNCHANGED' WHEN u.inserted THEN 'CREATED' ELSE 'UPDATED' END AS status "
+                + "FROM input i "
+                + "LEFT JOIN upserted u ON u.code = i.code "
+                + "LEFT JOIN country c ON c.code = i.code AND c.person_id IS NULL "
+                + "ORDER BY i.ord";
+
+        return jdbcTemplate.query(sql, (rs, rowNum) -> new CountryUpsertResult(
+                rs.getInt("id"),
+                rs.getString("name"),
+                rs.getString("code"),
+                rs.getLong("version"),
+                CountryUpsertResult.Status.valueOf(rs.getString("status")),
+                rs.getString("previous_name"),
+                rs.getString("previous_code"),
+                null), args);
+    }
+
+    // The row is locked by the first CTE, so a missing row (no result) and a stale version (no updated row)
+    // are told apart within the same statement.
+    @Override
+    public Optional<CountryUpsertResult> updateIfVersionMatches(
+            Integer id, String name, String code, Long expectedVersion) {
+        String sql = "WITH previous AS (SELECT id, name, code, person_id FROM country WHERE id = ? FOR UPDATE), "
+                + "updated AS ("
+                + "UPDATE country c SET name = ?, code = ?, version = c.version + 1 "
+                + "FROM previous p WHERE c.id = p.id" + (expectedVersion != null ? " AND c.version = ?" : "")
+                + " RETURNING c.id, c.name, c.code, c.version) "
+                + "SELECT u.id, u.name, u.code, u.version, p.name AS previous_name, p.code AS previous_code, "
+                + "p.person_id "
+                + "FROM previous p LEFT JOIN updated u ON u.id = p.id";
+        Object[] args = expectedVersion != null
+                ? new Object[]{id, name, code, expectedVersion}
+                : new Object[]{id, name, code};
+
+        List<CountryUpsertResult> rows = jdbcTemplate.query(sql, (rs, rowNum) -> rs.getObject("id") == null
+                ? null
+                : new CountryUpsertResult(
+                        rs.getInt("id"),
+                        rs.getString("name"),
+                        rs.getString("code"),
+                        rs.getLong("version"),
+                        CountryUpsertResult.Status.UPDATED,
+                        rs.getString("previous_name"),
+                        rs.getString("previous_code"),
+                        (Integer) rs.getObject("person_id")), args);
+        if (rows.isEmpty()) {
+            return Optional.empty();
+        }
+        if (rows.get(0) == null) {
+            throw new OptimisticLockingFailureException("Country " + id + " was modified concurrently");
+        }
+        return Optional.of(rows.get(0));
+    }
+}
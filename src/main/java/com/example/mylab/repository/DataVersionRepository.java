@@ -0,0 +1,23 @@
+package com.example.mylab.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public class DataVersionRepository {
+    // Row count, highest id and version sum per table: inserts, deletes and version-bumping updates all move it.
+    private static final String WATERMARK_SQL = "SELECT "
+            + "(SELECT count(*) || ':' || coalesce(max(id), 0) || ':' || coalesce(sum(version), 0) FROM person)"
+            + " || '/' || "
+            + "(SELECT count(*) || ':' || coalesce(max(id), 0) || ':' || coalesce(sum(version), 0) FROM country)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public DataVersionRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public String currentWatermark() {
+        return jdbcTemplate.queryForObject(WATERMARK_SQL, String.class);
+    }
+}
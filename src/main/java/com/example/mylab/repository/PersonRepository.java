@@ -1,16 +1,46 @@
 package com.example.mylab.repository;
 
+import com.example.mylab.dto.PersonCountryView;
+import com.example.mylab.dto.PersonDto;
 import com.example.mylab.model.Person;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
-public interface PersonRepository extends JpaRepository<Person,Integer>
+public interface PersonRepository extends JpaRepository<Person,Integer>, PersonRepositoryCustom
 {
-    @Query("SELECT p FROM Person p JOIN p.countries c WHERE c.name = :countryName")
-    List<Person> findPersonsByCountryName(@Param("countryName") String countryName);
-}
\ No newline at end of file
+    @Query("SELECT new com.example.mylab.dto.PersonDto(p.id, p.name, p.surname, p.version) "
+            + "FROM Person p ORDER BY p.id")
+    List<PersonDto> findAllDtos();
+
+    @Query("SELECT new com.example.mylab.dto.PersonDto(p.id, p.name, p.surname, p.version) "
+            + "FROM Person p WHERE p.id = :id")
+    Optional<PersonDto> findDtoById(@Param("id") Integer id);
+
+    @Query("SELECT new com.example.mylab.dto.PersonDto(p.id, p.name, p.surname, p.version) "
+            + "FROM Person p WHERE p.id IN :ids")
+    List<PersonDto> findDtosByIdIn(@Param("ids") Collection<Integer> ids);
+
+    @Query("SELECT DISTINCT new com.example.mylab.dto.PersonDto(p.id, p.name, p.surname, p.version) "
+            + "FROM Person p JOIN p.countries c WHERE c.name = :countryName")
+    List<PersonDto> findDtosByCountryName(@Param("countryName") String countryName);
+
+    @Query("SELECT c.person.id AS personId, c.id AS id, c.name AS name, c.code AS code "
+            + "FROM Country c WHERE c.person.id IS NOT NULL")
+    List<PersonCountryView> findAllPersonCountries();
+
+    @Query("SELECT c.person.id AS personId, c.id AS id, c.name AS name, c.code AS code "
+            + "FROM Country c WHERE c.person.id IN :personIds")
+    List<PersonCountryView> findCountriesByPersonIds(@Param("personIds") Collection<Integer> personIds);
+
+    @Modifying(clearAutomatically = true)
+    @Query("DELETE FROM Country c WHERE c.person.id IN :personIds")
+    int deleteCountriesByPersonIds(@Param("personIds") Collection<Integer> personIds);
+}
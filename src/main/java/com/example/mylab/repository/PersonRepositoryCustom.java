@@ -0,0 +1,16 @@
+package com.example.mylab.repository;
+
+import com.example.mylab.dto.PersonDto;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface PersonRepositoryCustom {
+    // Empty when the person does not exist; a stale expectedVersion throws OptimisticLockingFailureException.
+    // expectedVersion is required.
+    Optional<PersonDto> updateIfVersionMatches(Integer id, String name, String surname, Long expectedVersion);
+
+    // Returns only the ids that existed and were deleted.
+    List<Integer> deleteByIdInReturningIds(Collection<Integer> ids);
+}
@@ -0,0 +1,68 @@
+package com.example.mylab.repository;
+
+import com.example.mylab.dto.CountryDto;
+import com.example.mylab.dto.PersonDto;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public class PersonRepositoryImpl implements PersonRepositoryCustom {
+    private final JdbcTemplate jdbcTemplate;
+
+    public PersonRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // One round trip: the locked existing row tells a missing person (no rows) from a stale version (no updated
+    // row), and the countries are joined onto the updated row so the cache can be refreshed without a re-read.
+    // The lock makes a concurrent delete read as missing, not as a version conflict.
+    @Override
+    public Optional<PersonDto> updateIfVersionMatches(Integer id, String name, String surname, Long expectedVersion) {
+        String sql = "WITH existing AS (SELECT id FROM person WHERE id = ? FOR UPDATE), "
+                + "updated AS ("
+                + "UPDATE person p SET name = ?, surname = ?, version = p.version + 1 "
+                + "FROM existing e WHERE p.id = e.id AND p.version = ?"
+                + " RETURNING p.id, p.name, p.surname, p.version) "
+                + "SELECT u.id, u.name, u.surname, u.version, "
+                + "c.id AS country_id, c.name AS country_name, c.code AS country_code "
+                + "FROM existing e "
+                + "LEFT JOIN updated u ON u.id = e.id "
+                + "LEFT JOIN country c ON c.person_id = u.id "
+                + "ORDER BY c.id";
+        Object[] args = {id, name, surname, expectedVersion};
+
+        return jdbcTemplate.query(sql, rs -> {
+            if (!rs.next()) {
+                return Optional.<PersonDto>empty();
+            }
+            if (rs.getObject("id") == null) {
+                throw new OptimisticLockingFailureException("Person " + id + " was modified concurrently");
+            }
+            PersonDto person = new PersonDto(
+                    rs.getInt("id"), rs.getString("name"), rs.getString("surname"), rs.getLong("version"));
+            List<CountryDto> countries = new ArrayList<>();
+            do {
+                if (rs.getObject("country_id") != null) {
+                    countries.add(new CountryDto(
+                            rs.getInt("country_id"), rs.getString("country_name"), rs.getString("country_code")));
+                }
+            } while (rs.next());
+            return Optional.of(person.withCountries(countries));
+        }, args);
+    }
+
+    @Override
+    public List<Integer> deleteByIdInReturningIds(Collection<Integer> ids) {
+        return jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(
+                    "DELETE FROM person WHERE id = ANY (?) RETURNING id");
+            statement.setArray(1, connection.createArrayOf("integer", ids.toArray()));
+            return statement;
+        }, (rs, rowNum) -> rs.getInt("id"));
+    }
+}
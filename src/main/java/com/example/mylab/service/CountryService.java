@@ -1,66 +1,203 @@
 package com.example.mylab.service;
 
+import com.example.mylab.cache.CommonCache;
+import com.example.mylab.cache.NegativeCache;
+import com.example.mylab.dto.CountryDto;
+import com.example.mylab.dto.CountryUpsertResult;
+import com.example.mylab.feed.ChangeEvent;
+import com.example.mylab.feed.ChangeFeed;
 import com.example.mylab.model.Country;
 import com.example.mylab.repository.CountryRepository;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
 public class CountryService {
+    public static final String CODE_BY_NAME_PREFIX = "country_code_by_name_";
+    public static final String NAME_BY_CODE_PREFIX = "country_name_by_code_";
+    private static final int MAX_CODE_LENGTH = 3;
 
     private final CountryRepository countryRepository;
+    private final CommonCache commonCache;
+    private final NegativeCache negativeCache;
+    private final ChangeFeed changeFeed;
 
-    public CountryService(CountryRepository countryRepository) {
+    public CountryService(
+            CountryRepository countryRepository,
+            CommonCache commonCache,
+            NegativeCache negativeCache,
+            ChangeFeed changeFeed) {
         this.countryRepository = countryRepository;
+        this.commonCache = commonCache;
+        this.negativeCache = negativeCache;
+        this.changeFeed = changeFeed;
     }
 
-    public Country create(Country country) {
+    public CountryDto create(Country country) {
         if (country.getName() == null || country.getName().isEmpty() ||
                 country.getCode() == null || country.getCode().isEmpty()) {
             throw new IllegalArgumentException("Country name and code are required");
         }
 
         try {
-            return countryRepository.save(country);
+            CountryDto saved = CountryDto.from(countryRepository.save(country));
+            cacheLookup(saved.getName(), saved.getCode());
+            publish(ChangeEvent.Type.CREATED, saved);
+            return saved;
         } catch (DataIntegrityViolationException e) {
             throw new IllegalArgumentException("Country with this code already exists");
         }
     }
 
+    @Transactional
+    public List<CountryUpsertResult> upsertAll(List<Country> countries) {
+        Map<String, Country> byCode = new LinkedHashMap<>();
+        for (int i = 0; i < countries.size(); i++) {
+            Country country = countries.get(i);
+            if (country == null || country.getName() == null || country.getName().isEmpty() ||
+                    country.getCode() == null || country.getCode().isEmpty()) {
+                throw new IllegalArgumentException("Country name and code are required (row " + i + ")");
+            }
+            if (country.getCode().length() > MAX_CODE_LENGTH) {
+                throw new IllegalArgumentException("Country code is longer than " + MAX_CODE_LENGTH
+                        + " characters (row " + i + ")");
+            }
+            byCode.put(country.getCode(), country);
+        }
+
+        List<CountryUpsertResult> results = countryRepository.upsertAllByCode(new ArrayList<>(byCode.values()));
+        results.forEach(result -> {
+            if (result.getStatus() == CountryUpsertResult.Status.UPDATED && result.getPreviousName() != null) {
+                commonCache.put(CODE_BY_NAME_PREFIX + result.getPreviousName(), null);
+            }
+            evictPersonsFor(result);
+            cacheLookup(result.getName(), result.getCode());
+            if (result.getStatus() != CountryUpsertResult.Status.UNCHANGED) {
+                publish(result.getStatus() == CountryUpsertResult.Status.CREATED
+                                ? ChangeEvent.Type.CREATED
+                                : ChangeEvent.Type.UPDATED,
+                        new CountryDto(result.getId(), result.getName(), result.getCode(), result.getVersion()));
+            }
+        });
+        return results;
+    }
+
     public String getCodeByCountry(String countryName) {
-        return countryRepository.findByName(countryName)
-                .map(Country::getCode)
-                .orElse(null);
+        String cacheKey = CODE_BY_NAME_PREFIX + countryName;
+        if (negativeCache.contains(cacheKey)) {
+            return null;
+        }
+
+        return commonCache.getOrLoad(cacheKey, String.class, () -> {
+            String code = countryRepository.findFirstByNameAndPersonIsNullOrderByIdAsc(countryName)
+                    .map(Country::getCode)
+                    .orElse(null);
+            if (code != null) {
+                cacheLookup(countryName, code);
+            } else {
+                negativeCache.put(cacheKey);
+            }
+            return code;
+        });
     }
 
     public String getCountryByCode(String code) {
-        return countryRepository.findByCode(code)
-                .map(Country::getName)
-                .orElse(null);
+        String cacheKey = NAME_BY_CODE_PREFIX + code;
+        if (negativeCache.contains(cacheKey)) {
+            return null;
+        }
+
+        return commonCache.getOrLoad(cacheKey, String.class, () -> {
+            String name = countryRepository.findByCodeAndPersonIsNull(code)
+                    .map(Country::getName)
+                    .orElse(null);
+            if (name != null) {
+                cacheLookup(name, code);
+            } else {
+                negativeCache.put(cacheKey);
+            }
+            return name;
+        });
     }
 
-    public List<Country> findAll() {
-        return countryRepository.findAll();
+    public List<CountryDto> findAll() {
+        return countryRepository.findAllDtos();
     }
 
-    public Optional<Country> findById(Integer id) {
-        return countryRepository.findById(id);
+    public Optional<CountryDto> findById(Integer id) {
+        return countryRepository.findDtoById(id);
     }
 
-    public Country update(Integer id, Country countryDetails) {
-        return countryRepository.findById(id)
-                .map(country -> {
-                    country.setName(countryDetails.getName());
-                    country.setCode(countryDetails.getCode());
-                    return countryRepository.save(country);
+    public CountryDto update(Integer id, Country countryDetails) {
+        if (countryDetails.getName() == null || countryDetails.getName().isEmpty() ||
+                countryDetails.getCode() == null || countryDetails.getCode().isEmpty()) {
+            throw new IllegalArgumentException("Country name and code are required");
+        }
+
+        Optional<CountryUpsertResult> result;
+        try {
+            result = countryRepository.updateIfVersionMatches(
+                    id, countryDetails.getName(), countryDetails.getCode(), countryDetails.getVersion());
+        } catch (DataIntegrityViolationException e) {
+            throw new IllegalArgumentException("Country with this code already exists");
+        }
+
+        return result
+                .map(row -> {
+                    evictLookup(row.getPreviousName(), row.getPreviousCode());
+                    evictPersonsFor(row);
+                    cacheLookup(row.getName(), row.getCode());
+                    CountryDto updated = new CountryDto(row.getId(), row.getName(), row.getCode(), row.getVersion());
+                    publish(ChangeEvent.Type.UPDATED, updated);
+                    return updated;
                 })
                 .orElse(null);
     }
 
+    // Deleting a missing id is a no-op: nothing is evicted and no DELETED event is published.
+    @Transactional
     public void delete(Integer id) {
-        countryRepository.deleteById(id);
+        if (countryRepository.deleteByIdReturningCount(id) == 0) {
+            return;
+        }
+        commonCache.removeByPrefix(CODE_BY_NAME_PREFIX);
+        commonCache.removeByPrefix(NAME_BY_CODE_PREFIX);
+        changeFeed.publish(ChangeFeed.COUNTRY, ChangeEvent.Type.DELETED, id, null);
+    }
+
+    private void publish(ChangeEvent.Type type, CountryDto country) {
+        changeFeed.publish(ChangeFeed.COUNTRY, type, country.getId(), country);
+    }
+
+    private void cacheLookup(String name, String code) {
+        commonCache.put(CODE_BY_NAME_PREFIX + name, code);
+        commonCache.put(NAME_BY_CODE_PREFIX + code, name);
+        negativeCache.evict(CODE_BY_NAME_PREFIX + name);
+        negativeCache.evict(NAME_BY_CODE_PREFIX + code);
+    }
+
+    // A renamed country changes the person holding it and the by-country lists under both names.
+    private void evictPersonsFor(CountryUpsertResult result) {
+        if (result.getPreviousName() == null || result.getPreviousName().equals(result.getName())) {
+            return;
+        }
+        if (result.getPersonId() != null) {
+            commonCache.removeById(PersonService.CACHE_NAME, result.getPersonId());
+        }
+        commonCache.put(PersonService.PERSONS_BY_COUNTRY_PREFIX + result.getPreviousName(), null);
+        commonCache.put(PersonService.PERSONS_BY_COUNTRY_PREFIX + result.getName(), null);
+        negativeCache.evict(PersonService.PERSONS_BY_COUNTRY_PREFIX + result.getName());
+    }
+
+    private void evictLookup(String name, String code) {
+        commonCache.put(CODE_BY_NAME_PREFIX + name, null);
+        commonCache.put(NAME_BY_CODE_PREFIX + code, null);
     }
-}
\ No newline at end of file
+}
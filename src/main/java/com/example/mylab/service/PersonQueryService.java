@@ -0,0 +1,67 @@
+package com.example.mylab.service;
+
+import com.example.mylab.counter.RequestCounter;
+import com.example.mylab.dto.PersonDto;
+import com.example.mylab.dto.PersonQuery;
+import com.example.mylab.feed.ChangeFeed;
+import com.example.mylab.query.PersonColumns;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+@Service
+public class PersonQueryService {
+    private static final int MAX_LIMIT = 1000;
+
+    private final PersonService personService;
+    private final ChangeFeed changeFeed;
+    private final RequestCounter requestCounter;
+    private volatile Columns columns;
+
+    public PersonQueryService(PersonService personService, ChangeFeed changeFeed, RequestCounter requestCounter) {
+        this.personService = personService;
+        this.changeFeed = changeFeed;
+        this.requestCounter = requestCounter;
+    }
+
+    public List<PersonDto> query(PersonQuery query) {
+        requestCounter.increment("PersonQueryService.query");
+        if (query.getLimit() < 1 || query.getLimit() > MAX_LIMIT) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_LIMIT);
+        }
+        if (query.getMinCountries() < 0 || query.getMinCountries() > query.getMaxCountries()) {
+            throw new IllegalArgumentException("minCountries must be between 0 and maxCountries");
+        }
+        return currentColumns().query(query, ForkJoinPool.commonPool());
+    }
+
+    // Every person or country write publishes to the change feed, so an unchanged feed sequence means the
+    // columns are still current. The sequence is read before the persons: a write that lands during a rebuild
+    // moves it on and triggers another rebuild. One request rebuilds while the others wait for its result.
+    private PersonColumns currentColumns() {
+        Columns current = columns;
+        if (current != null && current.sequence == changeFeed.getLastSequence()) {
+            return current.columns;
+        }
+        synchronized (this) {
+            long sequence = changeFeed.getLastSequence();
+            current = columns;
+            if (current == null || current.sequence != sequence) {
+                current = new Columns(sequence, new PersonColumns(personService.allPersons()));
+                columns = current;
+            }
+            return current.columns;
+        }
+    }
+
+    private static final class Columns {
+        private final long sequence;
+        private final PersonColumns columns;
+
+        private Columns(long sequence, PersonColumns columns) {
+            this.sequence = sequence;
+            this.columns = columns;
+        }
+    }
+}
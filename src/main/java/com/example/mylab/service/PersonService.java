@@ -1,157 +1,333 @@
 package com.example.mylab.service;
 
 import com.example.mylab.cache.CommonCache;
+import com.example.mylab.cache.NegativeCache;
+import com.example.mylab.cache.StringPool;
 import com.example.mylab.counter.RequestCounter;
+import com.example.mylab.dto.CountryDto;
+import com.example.mylab.dto.PersonCountryView;
+import com.example.mylab.dto.PersonDto;
+import com.example.mylab.feed.ChangeEvent;
+import com.example.mylab.feed.ChangeFeed;
 import com.example.mylab.model.Person;
 import com.example.mylab.repository.PersonRepository;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Service
 public class PersonService {
-    private static final String CACHE_NAME = "persons";
+    public static final String CACHE_NAME = "persons";
     private static final String ALL_PERSONS_KEY = "all_persons";
-    private static final String PERSONS_BY_COUNTRY_PREFIX = "persons_by_country_";
+    public static final String PERSONS_BY_COUNTRY_PREFIX = "persons_by_country_";
+    private static final String MISSING_PERSON_PREFIX = "missing_person_";
+    private static final int DELETE_BATCH_SIZE = 5000;
+    private static final int MAX_IDS_PER_LOOKUP = 1000;
+    private static final int MAX_SHARED_COUNTRY_STRINGS = 10000;
 
     private final PersonRepository personRepository;
     private final RequestCounter requestCounter;
     private final CommonCache commonCache;
+    private final NegativeCache negativeCache;
+    private final ChangeFeed changeFeed;
+    private final StringPool countryStrings = new StringPool(MAX_SHARED_COUNTRY_STRINGS);
 
     @Autowired
     public PersonService(
             PersonRepository personRepository,
             RequestCounter requestCounter,
-            CommonCache commonCache) {
+            CommonCache commonCache,
+            NegativeCache negativeCache,
+            ChangeFeed changeFeed) {
         this.personRepository = personRepository;
         this.requestCounter = requestCounter;
         this.commonCache = commonCache;
+        this.negativeCache = negativeCache;
+        this.changeFeed = changeFeed;
     }
 
-    public List<Person> findAll() {
+    public List<PersonDto> findAll() {
         requestCounter.increment("PersonService.findAll");
-        List<Person> cached = commonCache.get(ALL_PERSONS_KEY, List.class);
-        if (cached != null) {
-            return cached;
-        }
+        return allPersons();
+    }
 
-        List<Person> persons = personRepository.findAll();
-        cachePersons(persons);
-        commonCache.put(ALL_PERSONS_KEY, persons);
-        return persons;
+    // The list behind findAll, for in-process readers that should not be counted as findAll requests.
+    public List<PersonDto> allPersons() {
+        return getPersonList(ALL_PERSONS_KEY, () -> withCountries(
+                personRepository.findAllDtos(),
+                personRepository.findAllPersonCountries()));
     }
 
-    public Optional<Person> findById(Integer id) {
+    public Optional<PersonDto> findById(Integer id) {
         requestCounter.increment("PersonService.findById");
-        Person cached = commonCache.getById(CACHE_NAME, id, Person.class);
-        if (cached != null) {
-            return Optional.of(cached);
+        if (negativeCache.contains(MISSING_PERSON_PREFIX + id)) {
+            return Optional.empty();
         }
+        return Optional.ofNullable(commonCache.getByIdOrLoad(
+                CACHE_NAME, id, PersonDto.class, () -> loadPerson(id), PersonDto::getVersion));
+    }
 
-        Optional<Person> person = personRepository.findById(id);
-        person.ifPresent(this::cachePerson);
-        return person;
+    public List<PersonDto> findAllByIds(List<Integer> ids) {
+        requestCounter.increment("PersonService.findAllByIds");
+        if (ids.size() > MAX_IDS_PER_LOOKUP) {
+            throw new IllegalArgumentException("At most " + MAX_IDS_PER_LOOKUP + " ids can be requested at once");
+        }
+
+        Map<Integer, PersonDto> found = new HashMap<>();
+        List<Integer> misses = new ArrayList<>();
+        for (Integer id : new LinkedHashSet<>(ids)) {
+            if (id == null) {
+                continue;
+            }
+            PersonDto cached = commonCache.getById(CACHE_NAME, id, PersonDto.class);
+            if (cached != null) {
+                found.put(id, cached);
+            } else if (!negativeCache.contains(MISSING_PERSON_PREFIX + id)) {
+                misses.add(id);
+            }
+        }
+
+        if (!misses.isEmpty()) {
+            withCountries(personRepository.findDtosByIdIn(misses), personRepository.findCountriesByPersonIds(misses))
+                    .forEach(person -> {
+                        cachePerson(person);
+                        found.put(person.getId(), person);
+                    });
+            misses.stream()
+                    .filter(id -> !found.containsKey(id))
+                    .forEach(id -> negativeCache.put(MISSING_PERSON_PREFIX + id));
+        }
+
+        return ids.stream()
+                .map(found::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
     }
 
-    public Person create(Person person) {
+    public PersonDto create(Person person) {
         requestCounter.increment("PersonService.create");
-        Person saved = personRepository.save(person);
+        PersonDto saved = PersonDto.from(personRepository.save(person));
         cachePerson(saved);
-        invalidateAllPersonsCache();
+        invalidateListsFor(saved);
+        publish(ChangeEvent.Type.CREATED, saved);
         return saved;
     }
 
-    public List<Person> createAll(List<Person> persons) {
+    public List<PersonDto> createAll(List<Person> persons) {
         requestCounter.increment("PersonService.createAll");
-        List<Person> savedPersons = persons.stream()
+        List<PersonDto> savedPersons = persons.stream()
                 .map(personRepository::save)
+                .map(PersonDto::from)
                 .peek(this::cachePerson)
+                .peek(this::invalidateListsFor)
+                .peek(saved -> publish(ChangeEvent.Type.CREATED, saved))
                 .collect(Collectors.toList());
-        invalidateAllPersonsCache();
         return savedPersons;
     }
 
-    public Person update(Integer id, Person personDetails) {
+    // Updates must carry the version they were based on; a stale one fails with a conflict instead of
+    // overwriting a concurrent change.
+    @Transactional
+    public PersonDto update(Integer id, Person personDetails) {
         requestCounter.increment("PersonService.update");
-        return personRepository.findById(id)
-                .map(existing -> {
-                    clearPersonCache(existing);
-                    existing.setName(personDetails.getName());
-                    existing.setSurname(personDetails.getSurname());
-                    Person updated = personRepository.save(existing);
-                    cachePerson(updated);
-                    invalidateAllPersonsCache();
+        requireVersion(personDetails);
+        return personRepository.updateIfVersionMatches(
+                        id, personDetails.getName(), personDetails.getSurname(), personDetails.getVersion())
+                .map(updated -> {
+                    afterCommit(() -> cachePerson(updated));
+                    publish(ChangeEvent.Type.UPDATED, updated);
                     return updated;
                 })
                 .orElse(null);
     }
 
-    public List<Person> updateAll(List<Person> personUpdates) {
+    @Transactional
+    public List<PersonDto> updateAll(List<Person> personUpdates) {
         requestCounter.increment("PersonService.updateAll");
-        return personUpdates.stream()
-                .map(update -> personRepository.findById(update.getId())
-                        .map(existing -> {
-                            clearPersonCache(existing);
-                            existing.setName(update.getName());
-                            existing.setSurname(update.getSurname());
-                            Person updated = personRepository.save(existing);
-                            cachePerson(updated);
-                            return updated;
-                        })
+        personUpdates.forEach(this::requireVersion);
+        List<PersonDto> updatedPersons = personUpdates.stream()
+                .map(update -> personRepository.updateIfVersionMatches(
+                                update.getId(), update.getName(), update.getSurname(), update.getVersion())
                         .orElse(null))
                 .filter(person -> person != null)
-                .peek(person -> invalidateAllPersonsCache())
                 .collect(Collectors.toList());
+
+        updatedPersons.forEach(updated -> {
+            afterCommit(() -> cachePerson(updated));
+            publish(ChangeEvent.Type.UPDATED, updated);
+        });
+        return updatedPersons;
     }
 
+    @Transactional
     public void delete(Integer id) {
         requestCounter.increment("PersonService.delete");
-        personRepository.findById(id).ifPresent(person -> {
-            clearPersonCache(person);
-            invalidateAllPersonsCache();
-            personRepository.deleteById(id);
-        });
+        deleteByIds(List.of(id));
     }
 
+    @Transactional
     public void deleteAll(List<Integer> ids) {
         requestCounter.increment("PersonService.deleteAll");
-        List<Person> persons = personRepository.findAllById(ids);
-        persons.forEach(this::clearPersonCache);
-        invalidateAllPersonsCache();
-        personRepository.deleteAllById(ids);
+        deleteByIds(ids);
     }
 
-    public List<Person> findByCountryName(String countryName) {
+    public List<PersonDto> findByCountryName(String countryName) {
         requestCounter.increment("PersonService.findByCountryName");
         String cacheKey = PERSONS_BY_COUNTRY_PREFIX + countryName;
-        List<Person> cached = commonCache.get(cacheKey, List.class);
-        if (cached != null) {
-            return cached;
+        if (negativeCache.contains(cacheKey)) {
+            return List.of();
         }
 
-        List<Person> persons = personRepository.findPersonsByCountryName(countryName);
-        commonCache.put(cacheKey, persons);
-        cachePersons(persons);
-        return persons;
+        return getPersonList(cacheKey, () -> {
+            List<PersonDto> persons = personRepository.findDtosByCountryName(countryName);
+            if (persons.isEmpty()) {
+                negativeCache.put(cacheKey);
+                return persons;
+            }
+            return withCountries(persons, personRepository.findCountriesByPersonIds(
+                    persons.stream().map(PersonDto::getId).collect(Collectors.toList())));
+        });
+    }
+
+    private void requireVersion(Person person) {
+        if (person.getVersion() == null) {
+            throw new IllegalArgumentException("version is required to update a person");
+        }
+    }
+
+    // Inside a transaction the cache is written only after commit, so a rollback never leaves it holding a
+    // version that was not committed. Registered before the change event, so readers woken by the event
+    // already find the new entry.
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private PersonDto loadPerson(Integer id) {
+        PersonDto person = personRepository.findDtoById(id)
+                .map(found -> withCountries(
+                        List.of(found),
+                        personRepository.findCountriesByPersonIds(List.of(id))).get(0))
+                .orElse(null);
+        if (person == null) {
+            negativeCache.put(MISSING_PERSON_PREFIX + id);
+        }
+        return person;
+    }
+
+    private List<PersonDto> withCountries(List<PersonDto> persons, List<PersonCountryView> countries) {
+        Map<Integer, List<CountryDto>> countriesByPerson = countries.stream()
+                .collect(Collectors.groupingBy(
+                        PersonCountryView::getPersonId,
+                        Collectors.mapping(
+                                country -> CountryDto.shared(
+                                        country.getId(), country.getName(), country.getCode(), countryStrings),
+                                Collectors.toList())));
+        return persons.stream()
+                .map(person -> person.withCountries(
+                        countriesByPerson.getOrDefault(person.getId(), List.of())))
+                .collect(Collectors.toList());
+    }
+
+    private void deleteByIds(List<Integer> ids) {
+        List<Integer> distinctIds = ids.stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .collect(Collectors.toList());
+        List<Integer> deletedIds = new ArrayList<>();
+        for (int from = 0; from < distinctIds.size(); from += DELETE_BATCH_SIZE) {
+            List<Integer> batch = distinctIds.subList(from, Math.min(from + DELETE_BATCH_SIZE, distinctIds.size()));
+            personRepository.deleteCountriesByPersonIds(batch);
+            deletedIds.addAll(personRepository.deleteByIdInReturningIds(batch));
+        }
+        deletedIds.forEach(id -> changeFeed.publish(ChangeFeed.PERSON, ChangeEvent.Type.DELETED, id, null));
+        distinctIds.forEach(this::clearPersonCache);
+        invalidateAllPersonsCache();
+        commonCache.removeByPrefix(PERSONS_BY_COUNTRY_PREFIX);
     }
 
-    private void cachePerson(Person person) {
+    private void publish(ChangeEvent.Type type, PersonDto person) {
+        changeFeed.publish(ChangeFeed.PERSON, type, person.getId(), person);
+    }
+
+    private void cachePerson(PersonDto person) {
         commonCache.putWithId(CACHE_NAME, person.getId(), person);
     }
 
-    private void cachePersons(List<Person> persons) {
+    private void cachePersons(List<PersonDto> persons) {
         persons.forEach(this::cachePerson);
     }
 
-    private void clearPersonCache(Person person) {
-        commonCache.removeById(CACHE_NAME, person.getId());
+    // List entries keep only ids; each person is held once in the id cache.
+    private int[] cachePersonList(List<PersonDto> persons) {
+        if (persons.isEmpty()) {
+            return null;
+        }
+        cachePersons(persons);
+        return persons.stream().mapToInt(PersonDto::getId).toArray();
+    }
+
+    private List<PersonDto> getPersonList(String key, Supplier<List<PersonDto>> loader) {
+        Supplier<int[]> idLoader = () -> cachePersonList(loader.get());
+        int[] ids = commonCache.getOrLoad(key, int[].class, idLoader);
+        if (ids == null) {
+            return List.of();
+        }
+        List<PersonDto> persons = commonCache.getAllById(CACHE_NAME, ids, PersonDto.class);
+        if (persons != null) {
+            return persons;
+        }
+
+        // Persons behind the list changed since it was built: reload it, or serve the last known list if that fails.
+        commonCache.put(key, null);
+        ids = commonCache.getOrLoad(key, int[].class, idLoader);
+        if (ids == null) {
+            return List.of();
+        }
+        persons = commonCache.getAllById(CACHE_NAME, ids, PersonDto.class);
+        if (persons == null) {
+            persons = commonCache.getAllByIdStale(CACHE_NAME, ids, PersonDto.class);
+        }
+        return persons != null ? persons : loader.get();
+    }
+
+    private void clearPersonCache(Integer id) {
+        commonCache.removeById(CACHE_NAME, id);
     }
 
     private void invalidateAllPersonsCache() {
         commonCache.put(ALL_PERSONS_KEY, null);
     }
+
+    private void invalidateListsFor(PersonDto person) {
+        invalidateAllPersonsCache();
+        negativeCache.evict(MISSING_PERSON_PREFIX + person.getId());
+        person.getCountries().forEach(country -> {
+            commonCache.put(PERSONS_BY_COUNTRY_PREFIX + country.getName(), null);
+            negativeCache.evict(PERSONS_BY_COUNTRY_PREFIX + country.getName());
+            negativeCache.evict(CountryService.CODE_BY_NAME_PREFIX + country.getName());
+            negativeCache.evict(CountryService.NAME_BY_CODE_PREFIX + country.getCode());
+        });
+    }
 }
\ No newline at end of file
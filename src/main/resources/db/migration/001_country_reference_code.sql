@@ -0,0 +1,28 @@
+-- Country codes are unique among reference countries only (rows without a person); person countries
+-- may repeat a code. Runs after Hibernate's schema update as a single statement (see
+-- spring.sql.init.separator) and does nothing once the partial index exists.
+-- Duplicate reference codes abort startup instead of being deleted; resolve them by hand first.
+DO $$
+DECLARE
+    duplicates TEXT;
+BEGIN
+    IF EXISTS (SELECT 1 FROM pg_indexes WHERE indexname = 'uk_country_reference_code') THEN
+        RETURN;
+    END IF;
+
+    SELECT string_agg(code, ', ' ORDER BY code) INTO duplicates
+    FROM (
+        SELECT code
+        FROM country
+        WHERE person_id IS NULL
+        GROUP BY code
+        HAVING count(*) > 1
+    ) d;
+    IF duplicates IS NOT NULL THEN
+        RAISE EXCEPTION 'Duplicate reference country codes, resolve before upgrading: %', duplicates;
+    END IF;
+
+    ALTER TABLE country DROP CONSTRAINT IF EXISTS uk_country_code;
+    CREATE UNIQUE INDEX uk_country_reference_code ON country (code) WHERE person_id IS NULL;
+END
+$$
@@ -0,0 +1,121 @@
+package com.example.mylab;
+
+import com.example.mylab.cache.CacheSnapshot;
+import com.example.mylab.cache.CommonCache;
+import com.example.mylab.dto.CountryDto;
+import com.example.mylab.dto.PersonDto;
+import com.example.mylab.repository.DataVersionRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CacheSnapshotTest {
+    private static final String INSTANCE = "jdbc:postgresql://localhost:5432/postgres";
+    private static final String WATERMARK = "2:2:3/1:7:0";
+
+    @TempDir
+    Path directory;
+
+    private final DataVersionRepository dataVersionRepository = mock(DataVersionRepository.class);
+
+    @Test
+    void ShouldServeRestoredEntriesWithoutLoadingWhenDataIsUnchanged() {
+        when(dataVersionRepository.currentWatermark()).thenReturn(WATERMARK);
+        Path file = writeSnapshot(INSTANCE);
+
+        CommonCache target = new CommonCache(60000, 600000, 3600000, 500);
+        snapshot(target, file, INSTANCE).load();
+
+        PersonDto person = target.getByIdOrLoad("persons", 1, PersonDto.class, CacheSnapshotTest::unexpectedLoad);
+        assertEquals("Ivanov", person.getSurname());
+        assertEquals(3L, person.getVersion());
+        assertEquals("BY", person.getCountries().get(0).getCode());
+        assertNull(target.getById("persons", 2, PersonDto.class).getSurname());
+        assertArrayEquals(new int[]{1, 2}, target.getOrLoad("all_persons", int[].class, CacheSnapshotTest::unexpectedLoad));
+        assertEquals("BY", target.get("country_code_by_name_Belarus", String.class));
+    }
+
+    @Test
+    void ShouldSkipSnapshotWhenDataChanged() {
+        when(dataVersionRepository.currentWatermark()).thenReturn(WATERMARK, "3:3:3/1:7:0");
+        Path file = writeSnapshot(INSTANCE);
+
+        CommonCache target = new CommonCache(60000, 600000, 3600000, 500);
+        snapshot(target, file, INSTANCE).load();
+
+        assertEquals(0, target.size());
+    }
+
+    @Test
+    void ShouldRestoreAsStaleWhenDatabaseIsUnreachable() {
+        when(dataVersionRepository.currentWatermark())
+                .thenReturn(WATERMARK)
+                .thenThrow(new DataAccessResourceFailureException("database down"));
+        Path file = writeSnapshot(INSTANCE);
+
+        CommonCache target = new CommonCache(60000, 600000, 3600000, 500);
+        snapshot(target, file, INSTANCE).load();
+
+        assertNull(target.getById("persons", 1, PersonDto.class));
+        PersonDto person = target.getByIdOrLoad("persons", 1, PersonDto.class, CacheSnapshotTest::databaseDown);
+        assertEquals("Ivanov", person.getSurname());
+        assertArrayEquals(new int[]{1, 2}, target.getOrLoad("all_persons", int[].class, CacheSnapshotTest::databaseDown));
+    }
+
+    @Test
+    void ShouldIgnoreSnapshotOfAnotherInstance() {
+        when(dataVersionRepository.currentWatermark()).thenReturn(WATERMARK);
+        Path file = writeSnapshot("jdbc:postgresql://other:5432/postgres");
+
+        CommonCache target = new CommonCache(60000, 600000, 3600000, 500);
+        snapshot(target, file, INSTANCE).load();
+
+        assertEquals(0, target.size());
+    }
+
+    @Test
+    void ShouldIgnoreCorruptSnapshot() throws IOException {
+        Path file = directory.resolve("cache.snapshot");
+        Files.write(file, new byte[]{0x4D, 0x4C, 0x43});
+
+        CommonCache target = new CommonCache(60000, 600000, 3600000, 500);
+        snapshot(target, file, INSTANCE).load();
+
+        assertEquals(0, target.size());
+    }
+
+    private Path writeSnapshot(String instanceId) {
+        Path file = directory.resolve("cache.snapshot");
+        CommonCache source = new CommonCache(60000, 600000, 3600000, 500);
+        source.putWithId("persons", 1, new PersonDto(1, "Ivan", "Ivanov", 3L, List.of(new CountryDto(7, "Belarus", "BY"))));
+        source.putWithId("persons", 2, new PersonDto(2, "Anna", null));
+        source.put("all_persons", new int[]{1, 2});
+        source.put("country_code_by_name_Belarus", "BY");
+        snapshot(source, file, instanceId).write();
+        return file;
+    }
+
+    private CacheSnapshot snapshot(CommonCache cache, Path file, String instanceId) {
+        return new CacheSnapshot(cache, dataVersionRepository, true, file.toString(), instanceId, 3600000);
+    }
+
+    private static <T> T unexpectedLoad() {
+        return fail("restored entry should have been served without a load");
+    }
+
+    private static <T> T databaseDown() {
+        throw new IllegalStateException("database down");
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.mylab;
+
+import com.example.mylab.feed.ChangeEvent;
+import com.example.mylab.feed.ChangeFeed;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChangeFeedTest {
+
+    @Test
+    void ShouldResumeFromCursorWithIncreasingSequences() {
+        ChangeFeed changeFeed = new ChangeFeed(10, 4, 1000);
+        changeFeed.publish(ChangeFeed.PERSON, ChangeEvent.Type.CREATED, 1, null);
+        changeFeed.publish(ChangeFeed.PERSON, ChangeEvent.Type.UPDATED, 1, null);
+        changeFeed.publish(ChangeFeed.COUNTRY, ChangeEvent.Type.DELETED, 7, null);
+
+        List<ChangeEvent> events = changeFeed.eventsSince(1, 100);
+
+        assertEquals(2, events.size());
+        assertEquals(2, events.get(0).getSequence());
+        assertEquals(ChangeEvent.Type.UPDATED, events.get(0).getType());
+        assertEquals(3, events.get(1).getSequence());
+        assertEquals(ChangeFeed.COUNTRY, events.get(1).getEntity());
+        assertTrue(changeFeed.eventsSince(3, 100).isEmpty());
+    }
+
+    @Test
+    void ShouldRequireResyncWhenCursorFellOutOfHistory() {
+        ChangeFeed changeFeed = new ChangeFeed(3, 4, 1000);
+        for (int id = 1; id <= 5; id++) {
+            changeFeed.publish(ChangeFeed.PERSON, ChangeEvent.Type.CREATED, id, null);
+        }
+
+        assertNull(changeFeed.eventsSince(0, 100));
+        assertEquals(3, changeFeed.eventsSince(2, 100).size());
+        assertEquals(5, changeFeed.getLastSequence());
+    }
+
+    @Test
+    void ShouldRequireResyncWhenCursorIsAheadOfSequence() {
+        ChangeFeed changeFeed = new ChangeFeed(10, 4, 1000);
+        changeFeed.publish(ChangeFeed.PERSON, ChangeEvent.Type.CREATED, 1, null);
+
+        assertNull(changeFeed.eventsSince(42, 100));
+        assertTrue(changeFeed.eventsSince(1, 100).isEmpty());
+    }
+}
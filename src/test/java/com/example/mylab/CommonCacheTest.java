@@ -0,0 +1,121 @@
+package com.example.mylab;
+
+import com.example.mylab.cache.CommonCache;
+import com.example.mylab.dto.PersonDto;
+import com.example.mylab.metrics.DbMetrics;
+import com.example.mylab.metrics.QueryBudgetDetector;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static com.example.mylab.QueryCountAssertions.assertStatementCount;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CommonCacheTest {
+
+    private final CommonCache cache = new CommonCache(60000, 600000, 3600000, 5000);
+
+    @Test
+    void ShouldNotServeRemovedEntryAsStale() {
+        cache.putWithId("persons", 1, new PersonDto(1, "Ivan", "Ivanov"));
+        cache.removeById("persons", 1);
+
+        PersonDto person = cache.getByIdOrLoad("persons", 1, PersonDto.class, () -> null);
+
+        assertNull(person);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void ShouldSweepEntriesPastMaxStale() {
+        CommonCache expiring = new CommonCache(60000, 600000, 0, 5000);
+        expiring.put("all_persons", new int[]{1});
+        expiring.put("all_persons", null);
+        expiring.putWithId("persons", 1, new PersonDto(1, "Ivan", "Ivanov"));
+        cache.put("all_persons", new int[]{1});
+        cache.put("all_persons", null);
+
+        assertEquals(0, cache.sweep());
+        assertEquals(2, expiring.sweep());
+        assertEquals(0, expiring.size());
+    }
+
+    @Test
+    void ShouldShareOneLoadBetweenConcurrentMisses() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Supplier<int[]> loader = () -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            awaitQuietly(release);
+            return new int[]{1, 2};
+        };
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            Future<int[]> first = callers.submit(() -> cache.getOrLoad("all_persons", int[].class, loader));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+            Future<int[]> second = callers.submit(() -> cache.getOrLoad("all_persons", int[].class, loader));
+            Thread.sleep(100);
+            release.countDown();
+
+            assertArrayEquals(new int[]{1, 2}, first.get(5, TimeUnit.SECONDS));
+            assertArrayEquals(new int[]{1, 2}, second.get(5, TimeUnit.SECONDS));
+            assertEquals(1, loads.get());
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    void ShouldKeepEntryWrittenWhileLoading() {
+        String value = cache.getOrLoad("country_code_by_name_Belarus", String.class, () -> {
+            cache.put("country_code_by_name_Belarus", "BY");
+            return "XX";
+        });
+
+        assertEquals("XX", value);
+        assertEquals("BY", cache.get("country_code_by_name_Belarus", String.class));
+    }
+
+    @Test
+    void ShouldNotReplaceNewerVersionWithOlderLoad() {
+        cache.put("person_1", new PersonDto(1, "Ivan", "Petrov", 2L));
+        cache.put("person_1", null);
+
+        PersonDto loaded = cache.getOrLoad(
+                "person_1", PersonDto.class, () -> new PersonDto(1, "Ivan", "Ivanov", 1L), PersonDto::getVersion);
+
+        assertEquals("Ivanov", loaded.getSurname());
+        assertNull(cache.get("person_1", PersonDto.class));
+    }
+
+    @Test
+    void ShouldCountRefreshStatementsInCallerScope() {
+        DbMetrics dbMetrics = new DbMetrics(200, new QueryBudgetDetector(true, false, 10, 2));
+        cache.put("all_persons", new int[]{1});
+        cache.put("all_persons", null);
+
+        assertStatementCount(1, () -> cache.getOrLoad("all_persons", int[].class, () -> {
+            dbMetrics.recordStatement("select id from person", 1_000);
+            return new int[]{1, 2};
+        }));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
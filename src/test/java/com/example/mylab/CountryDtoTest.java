@@ -0,0 +1,39 @@
+package com.example.mylab;
+
+import com.example.mylab.cache.StringPool;
+import com.example.mylab.dto.CountryDto;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class CountryDtoTest {
+
+    @Test
+    void ShouldShareCountryStringsFromPool() {
+        StringPool strings = new StringPool(10);
+        CountryDto first = CountryDto.shared(1, new String("Belarus"), new String("BY"), strings);
+        CountryDto second = CountryDto.shared(2, new String("Belarus"), new String("BY"), strings);
+        assertSame(first.getName(), second.getName());
+        assertSame(first.getCode(), second.getCode());
+    }
+
+    @Test
+    void ShouldStopSharingOncePoolIsFull() {
+        StringPool strings = new StringPool(2);
+        CountryDto.shared(1, "Belarus", "BY", strings);
+        CountryDto first = CountryDto.shared(2, new String("Poland"), new String("PL"), strings);
+        CountryDto second = CountryDto.shared(3, new String("Poland"), new String("PL"), strings);
+        assertNotSame(first.getName(), second.getName());
+        assertEquals("Poland", second.getName());
+        assertEquals(2, strings.size());
+    }
+
+    @Test
+    void ShouldKeepClientStringsAsGiven() {
+        String name = new String("Belarus");
+        CountryDto country = new CountryDto(1, name, "BY");
+        assertSame(name, country.getName());
+    }
+}
@@ -1,5 +1,11 @@
 package com.example.mylab;
 
+import com.example.mylab.cache.CommonCache;
+import com.example.mylab.cache.NegativeCache;
+import com.example.mylab.dto.CountryDto;
+import com.example.mylab.feed.ChangeEvent;
+import com.example.mylab.feed.ChangeFeed;
+import com.example.mylab.dto.CountryUpsertResult;
 import com.example.mylab.model.Country;
 import com.example.mylab.repository.CountryRepository;
 import com.example.mylab.service.CountryService;
@@ -12,16 +18,20 @@ import org.springframework.dao.DataIntegrityViolationException;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.any;
-import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.argThat;
+import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -30,6 +40,15 @@ class CountryServiceTest {
     @Mock
     private CountryRepository countryRepository;
 
+    @Mock
+    private CommonCache commonCache;
+
+    @Mock
+    private NegativeCache negativeCache;
+
+    @Mock
+    private ChangeFeed changeFeed;
+
     @InjectMocks
     private CountryService countryService;
 
@@ -40,7 +59,7 @@ class CountryServiceTest {
         when(mockCountry.getCode()).thenReturn("BY");
         when(countryRepository.save(mockCountry)).thenReturn(mockCountry);
 
-        Country savedCountry = countryService.create(mockCountry);
+        CountryDto savedCountry = countryService.create(mockCountry);
 
         assertNotNull(savedCountry);
         assertEquals("Belarus", savedCountry.getName());
@@ -67,13 +86,47 @@ class CountryServiceTest {
         assertThrows(IllegalArgumentException.class, () -> countryService.create(mockCountry));
     }
 
+    @Test
+    void ShouldUpsertCountriesKeepingLastRowPerCode() {
+        List<Country> countries = List.of(
+                new Country("Belarus", "BY"),
+                new Country("Poland", "PL"),
+                new Country("Republic of Belarus", "BY"));
+        List<CountryUpsertResult> upserted = List.of(
+                new CountryUpsertResult(1, "Republic of Belarus", "BY", 2L, CountryUpsertResult.Status.UPDATED, "Belarus", "BY",
+                        null),
+                new CountryUpsertResult(2, "Poland", "PL", 0L, CountryUpsertResult.Status.CREATED, null, null, null));
+        when(countryRepository.upsertAllByCode(any())).thenReturn(upserted);
+
+        List<CountryUpsertResult> result = countryService.upsertAll(countries);
+
+        assertEquals(2, result.size());
+        verify(countryRepository).upsertAllByCode(argThat(batch -> batch.size() == 2
+                && batch.get(0).getName().equals("Republic of Belarus")
+                && batch.get(1).getCode().equals("PL")));
+        verify(commonCache).put("country_code_by_name_Belarus", null);
+        verify(commonCache).put("country_name_by_code_BY", "Republic of Belarus");
+        verify(commonCache).put("persons_by_country_Belarus", null);
+        verify(commonCache).put("persons_by_country_Republic of Belarus", null);
+    }
+
+    @Test
+    void ShouldRejectBulkRowWithoutCode() {
+        List<Country> countries = List.of(new Country("Belarus", "BY"), new Country("Poland", null));
+
+        assertThrows(IllegalArgumentException.class, () -> countryService.upsertAll(countries));
+        verify(countryRepository, never()).upsertAllByCode(any());
+    }
+
     @Test
     void ShouldReturnCodeWhenCountryExists() {
         String countryName = "Belarus";
         Country mockCountry = mock(Country.class);
         when(mockCountry.getName()).thenReturn(countryName);
         when(mockCountry.getCode()).thenReturn("BY");
-        when(countryRepository.findByName(countryName)).thenReturn(Optional.of(mockCountry));
+        when(countryRepository.findFirstByNameAndPersonIsNullOrderByIdAsc(countryName)).thenReturn(Optional.of(mockCountry));
+        when(commonCache.getOrLoad(anyString(), eq(String.class), any()))
+                .thenAnswer(invocation -> invocation.<Supplier<String>>getArgument(2).get());
 
         String code = countryService.getCodeByCountry(countryName);
 
@@ -82,50 +135,65 @@ class CountryServiceTest {
 
     @Test
     void ShouldReturnNullWhenCountryNotExists() {
-        when(countryRepository.findByName("Unknown")).thenReturn(Optional.empty());
+        when(countryRepository.findFirstByNameAndPersonIsNullOrderByIdAsc("Unknown")).thenReturn(Optional.empty());
+        when(commonCache.getOrLoad(anyString(), eq(String.class), any()))
+                .thenAnswer(invocation -> invocation.<Supplier<String>>getArgument(2).get());
 
         String code = countryService.getCodeByCountry("Unknown");
 
         assertNull(code);
+        verify(negativeCache).put("country_code_by_name_Unknown");
+    }
+
+    @Test
+    void ShouldNotQueryDatabaseForKnownMissingCode() {
+        when(negativeCache.contains("country_name_by_code_XX")).thenReturn(true);
+
+        String name = countryService.getCountryByCode("XX");
+
+        assertNull(name);
+        verify(countryRepository, never()).findByCodeAndPersonIsNull(any());
     }
 
     @Test
     void ShouldReturnAllCountries() {
-        Country mockCountry1 = mock(Country.class);
-        Country mockCountry2 = mock(Country.class);
-        List<Country> mockCountries = List.of(mockCountry1, mockCountry2);
-        when(countryRepository.findAll()).thenReturn(mockCountries);
+        List<CountryDto> countries = List.of(
+                new CountryDto(1, "Belarus", "BY"),
+                new CountryDto(2, "Poland", "PL"));
+        when(countryRepository.findAllDtos()).thenReturn(countries);
 
-        List<Country> result = countryService.findAll();
+        List<CountryDto> result = countryService.findAll();
 
         assertEquals(2, result.size());
-        verify(countryRepository).findAll();
+        verify(countryRepository).findAllDtos();
     }
 
     @Test
     void ShouldUpdateCountryWhenIdExists() {
         Integer id = 1;
-        Country existingMock = mock(Country.class);
-        Country updatedMock = mock(Country.class);
-        when(updatedMock.getName()).thenReturn("Belarus Updated");
-        when(updatedMock.getCode()).thenReturn("BY");
-
-        when(countryRepository.findById(id)).thenReturn(Optional.of(existingMock));
-        when(countryRepository.save(existingMock)).thenReturn(updatedMock);
+        Country details = new Country("Belarus Updated", "BY");
+        details.setVersion(5L);
+        when(countryRepository.updateIfVersionMatches(id, "Belarus Updated", "BY", 5L)).thenReturn(Optional.of(
+                new CountryUpsertResult(id, "Belarus Updated", "BY", 6L, CountryUpsertResult.Status.UPDATED,
+                        "Belarus", "BY", 7)));
 
-        Country result = countryService.update(id, updatedMock);
+        CountryDto result = countryService.update(id, details);
 
         assertEquals("Belarus Updated", result.getName());
-        verify(countryRepository).findById(id);
-        verify(countryRepository).save(existingMock);
+        assertEquals(6L, result.getVersion());
+        verify(commonCache).put("country_code_by_name_Belarus", null);
+        verify(commonCache).put("country_name_by_code_BY", "Belarus Updated");
+        verify(commonCache).removeById("persons", 7);
+        verify(commonCache).put("persons_by_country_Belarus", null);
+        verify(countryRepository, never()).findById(any());
+        verify(countryRepository, never()).save(any());
     }
 
     @Test
     void ShouldReturnNullWhenIdNotExists() {
-        when(countryRepository.findById(999)).thenReturn(Optional.empty());
+        when(countryRepository.updateIfVersionMatches(999, "Belarus", "BY", null)).thenReturn(Optional.empty());
 
-        Country mockCountry = mock(Country.class);
-        Country result = countryService.update(999, mockCountry);
+        CountryDto result = countryService.update(999, new Country("Belarus", "BY"));
 
         assertNull(result);
     }
@@ -133,10 +201,20 @@ class CountryServiceTest {
     @Test
     void ShouldDeleteCountryWhenIdExists() {
         Integer id = 1;
-        doNothing().when(countryRepository).deleteById(id);
+        when(countryRepository.deleteByIdReturningCount(id)).thenReturn(1);
 
         countryService.delete(id);
 
-        verify(countryRepository).deleteById(id);
+        verify(countryRepository).deleteByIdReturningCount(id);
+        verify(changeFeed).publish(ChangeFeed.COUNTRY, ChangeEvent.Type.DELETED, id, null);
+    }
+
+    @Test
+    void ShouldNotPublishDeleteOfMissingCountry() {
+        when(countryRepository.deleteByIdReturningCount(999)).thenReturn(0);
+
+        countryService.delete(999);
+
+        verifyNoInteractions(commonCache, changeFeed);
     }
 }
\ No newline at end of file
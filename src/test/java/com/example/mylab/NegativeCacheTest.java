@@ -0,0 +1,29 @@
+package com.example.mylab;
+
+import com.example.mylab.cache.NegativeCache;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class NegativeCacheTest {
+
+    @Test
+    void ShouldForgetExpiredMisses() {
+        NegativeCache cache = new NegativeCache(0, 100);
+        cache.put("missing_person_1");
+
+        assertFalse(cache.contains("missing_person_1"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void ShouldStayWithinMaxEntries() {
+        NegativeCache cache = new NegativeCache(60000, 100);
+        for (int id = 0; id < 1000; id++) {
+            cache.put("missing_person_" + id);
+        }
+
+        assertEquals(100, cache.size());
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.mylab;
+
+import com.example.mylab.counter.RequestCounter;
+import com.example.mylab.dto.CountryDto;
+import com.example.mylab.dto.PersonDto;
+import com.example.mylab.dto.PersonQuery;
+import com.example.mylab.feed.ChangeFeed;
+import com.example.mylab.service.PersonQueryService;
+import com.example.mylab.service.PersonService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class PersonQueryServiceTest {
+
+    @Mock
+    private PersonService personService;
+
+    @Mock
+    private ChangeFeed changeFeed;
+
+    @Mock
+    private RequestCounter requestCounter;
+
+    @InjectMocks
+    private PersonQueryService personQueryService;
+
+    @Test
+    void ShouldFilterByCountryAndSurnamePrefix() {
+        CountryDto belarus = new CountryDto(1, "Belarus", "BY");
+        CountryDto poland = new CountryDto(2, "Poland", "PL");
+        when(personService.allPersons()).thenReturn(List.of(
+                new PersonDto(3, "Oleg", "Ivanchenko", List.of(belarus, poland)),
+                new PersonDto(1, "Ivan", "Ivanov", List.of(belarus)),
+                new PersonDto(2, "Anna", "Petrova", List.of(belarus)),
+                new PersonDto(4, "Olga", "Ivanova", List.of(poland))));
+
+        List<PersonDto> result = personQueryService.query(
+                new PersonQuery("by", "iv", null, null, PersonQuery.Sort.ID, false, 10));
+
+        assertEquals(List.of(1, 3), ids(result));
+    }
+
+    @Test
+    void ShouldReturnTopKAcrossParallelLeaves() {
+        List<PersonDto> persons = new ArrayList<>();
+        for (int id = 20000; id > 0; id--) {
+            List<CountryDto> countries = new ArrayList<>();
+            for (int i = 0; i < id % 5; i++) {
+                countries.add(new CountryDto(i, "Country" + i, "C" + i));
+            }
+            persons.add(new PersonDto(id, "Name" + id, "Surname" + id, countries));
+        }
+        when(personService.allPersons()).thenReturn(persons);
+
+        List<PersonDto> byCountries = personQueryService.query(
+                new PersonQuery(null, null, 2, 3, PersonQuery.Sort.COUNTRIES, true, 3));
+        List<PersonDto> lastIds = personQueryService.query(
+                new PersonQuery(null, null, null, null, PersonQuery.Sort.ID, true, 3));
+
+        assertEquals(List.of(3, 8, 13), ids(byCountries));
+        assertEquals(List.of(20000, 19999, 19998), ids(lastIds));
+    }
+
+    @Test
+    void ShouldRebuildColumnsOnlyWhenChangeFeedMoves() {
+        when(personService.allPersons())
+                .thenReturn(List.of(new PersonDto(1, "Ivan", "Ivanov")))
+                .thenReturn(List.of(new PersonDto(1, "Ivan", "Ivanov"), new PersonDto(2, "Anna", "Petrova")));
+        when(changeFeed.getLastSequence()).thenReturn(4L, 4L, 5L);
+        PersonQuery all = new PersonQuery(null, null, null, null, PersonQuery.Sort.ID, false, 10);
+
+        assertEquals(List.of(1), ids(personQueryService.query(all)));
+        assertEquals(List.of(1), ids(personQueryService.query(all)));
+        assertEquals(List.of(1, 2), ids(personQueryService.query(all)));
+
+        verify(personService, times(2)).allPersons();
+        verify(personService, never()).findAll();
+    }
+
+    @Test
+    void ShouldReturnNothingForUnknownCountry() {
+        when(personService.allPersons()).thenReturn(List.of(new PersonDto(1, "Ivan", "Ivanov")));
+
+        assertTrue(personQueryService.query(
+                new PersonQuery("Atlantis", null, null, null, null, false, 10)).isEmpty());
+    }
+
+    @Test
+    void ShouldRejectLimitAboveMaximum() {
+        assertThrows(IllegalArgumentException.class, () -> personQueryService.query(
+                new PersonQuery(null, null, null, null, null, false, 5000)));
+        verify(personService, never()).findAll();
+    }
+
+    private static List<Integer> ids(List<PersonDto> persons) {
+        return persons.stream().map(PersonDto::getId).collect(Collectors.toList());
+    }
+}
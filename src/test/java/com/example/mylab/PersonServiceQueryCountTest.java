@@ -0,0 +1,88 @@
+package com.example.mylab;
+
+import com.example.mylab.cache.CommonCache;
+import com.example.mylab.dto.PersonDto;
+import com.example.mylab.model.Country;
+import com.example.mylab.model.Person;
+import com.example.mylab.repository.PersonRepository;
+import com.example.mylab.service.PersonService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.example.mylab.QueryCountAssertions.assertStatementCount;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Runs service calls against a real Postgres through MeteredDataSource, so the counts are real SQL statements.
+@SpringBootTest(classes = PersonServiceQueryCountTest.TestApplication.class)
+@Testcontainers(disabledWithoutDocker = true)
+class PersonServiceQueryCountTest {
+
+    @Container
+    private static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    @Autowired
+    private PersonService personService;
+
+    @Autowired
+    private PersonRepository personRepository;
+
+    @Autowired
+    private CommonCache commonCache;
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", POSTGRES::getJdbcUrl);
+        registry.add("spring.datasource.username", POSTGRES::getUsername);
+        registry.add("spring.datasource.password", POSTGRES::getPassword);
+        registry.add("mylab.cache.snapshot.enabled", () -> "false");
+    }
+
+    @Test
+    void ShouldLoadUncachedPersonWithTwoStatements() {
+        Integer id = createPersons(1).get(0);
+        commonCache.clearAll();
+
+        assertStatementCount(2, () -> personService.findById(id));
+        assertStatementCount(0, () -> personService.findById(id));
+        assertStatementCount(1, () -> personService.findById(-1));
+        assertStatementCount(0, () -> personService.findById(-1));
+    }
+
+    @Test
+    void ShouldDeleteAllWithTwoStatements() {
+        List<Integer> ids = createPersons(3);
+
+        assertStatementCount(2, () -> personService.deleteAll(ids));
+        assertTrue(personRepository.findAllById(ids).isEmpty());
+    }
+
+    private List<Integer> createPersons(int count) {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Person person = new Person("Name" + i, "Surname" + i);
+            person.setCountries(new ArrayList<>(List.of(new Country("Belarus", "BY", person))));
+            PersonDto created = personService.create(person);
+            ids.add(created.getId());
+        }
+        return ids;
+    }
+
+    // The test tree has its own unannotated MyLabApplication, so the context is declared here.
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    @ComponentScan(basePackages = "com.example.mylab")
+    static class TestApplication {
+    }
+}
@@ -1,7 +1,12 @@
 package com.example.mylab;
 
 import com.example.mylab.cache.CommonCache;
+import com.example.mylab.cache.NegativeCache;
 import com.example.mylab.counter.RequestCounter;
+import com.example.mylab.dto.CountryDto;
+import com.example.mylab.feed.ChangeEvent;
+import com.example.mylab.feed.ChangeFeed;
+import com.example.mylab.dto.PersonDto;
 import com.example.mylab.model.Person;
 import com.example.mylab.repository.PersonRepository;
 import com.example.mylab.service.PersonService;
@@ -10,17 +15,25 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.AdditionalMatchers.aryEq;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyInt;
 import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -38,44 +51,91 @@ class PersonServiceTest {
     @Mock
     private CommonCache commonCache;
 
+    @Mock
+    private NegativeCache negativeCache;
+
+    @Mock
+    private ChangeFeed changeFeed;
+
     @InjectMocks
     private PersonService personService;
 
     @Test
     void ShouldReturnPersonsFromCacheWhenCacheExists() {
 
-        Person mockPerson = mock(Person.class);
-        List<Person> cachedPersons = List.of(mockPerson);
-        when(commonCache.get(anyString(), any())).thenReturn(cachedPersons);
-        List<Person> result = personService.findAll();
+        int[] cachedIds = {1};
+        List<PersonDto> cachedPersons = List.of(new PersonDto(1, "Ivan", "Ivanov"));
+        when(commonCache.getOrLoad(eq("all_persons"), eq(int[].class), any())).thenReturn(cachedIds);
+        when(commonCache.getAllById("persons", cachedIds, PersonDto.class)).thenReturn(cachedPersons);
+        List<PersonDto> result = personService.findAll();
         assertEquals(1, result.size());
-        verify(commonCache).get("all_persons", List.class);
-        verify(personRepository, never()).findAll();
+        verify(commonCache).getOrLoad(eq("all_persons"), eq(int[].class), any());
+        verify(personRepository, never()).findAllDtos();
     }
 
     @Test
     void ShouldFetchFromDbAndCacheWhenCacheEmpty() {
-        Person mockPerson = mock(Person.class);
-        List<Person> dbPersons = List.of(mockPerson);
-        when(commonCache.get(anyString(), any())).thenReturn(null);
-        when(personRepository.findAll()).thenReturn(dbPersons);
-        doNothing().when(commonCache).put(anyString(), any());
+        List<PersonDto> dbPersons = List.of(new PersonDto(1, "Ivan", "Ivanov"));
+        when(commonCache.getOrLoad(eq("all_persons"), eq(int[].class), any()))
+                .thenAnswer(invocation -> invocation.<Supplier<int[]>>getArgument(2).get());
+        when(commonCache.getAllById(eq("persons"), aryEq(new int[]{1}), eq(PersonDto.class))).thenReturn(dbPersons);
+        when(personRepository.findAllDtos()).thenReturn(dbPersons);
+        when(personRepository.findAllPersonCountries()).thenReturn(List.of());
         doNothing().when(requestCounter).increment(anyString());
-        List<Person> result = personService.findAll();
+        List<PersonDto> result = personService.findAll();
         assertEquals(1, result.size());
-        verify(commonCache).put("all_persons", dbPersons);
+        verify(personRepository).findAllDtos();
+        verify(commonCache).putWithId(eq("persons"), eq(1), any(PersonDto.class));
         verify(requestCounter).increment("PersonService.findAll");
     }
 
     @Test
     void ShouldReturnCachedPersonWhenExistsInCache() {
-        Person mockPerson = mock(Person.class);
-        when(commonCache.getById(anyString(), anyInt(), any())).thenReturn(mockPerson);
-        when(mockPerson.getName()).thenReturn("Ivan");
-        Optional<Person> result = personService.findById(1);
+        PersonDto cachedPerson = new PersonDto(1, "Ivan", "Ivanov");
+        when(commonCache.getByIdOrLoad(anyString(), anyInt(), any(), any(), any())).thenReturn(cachedPerson);
+        Optional<PersonDto> result = personService.findById(1);
         assertTrue(result.isPresent());
         assertEquals("Ivan", result.get().getName());
-        verify(personRepository, never()).findById(any());
+        verify(personRepository, never()).findDtoById(any());
+    }
+
+    @Test
+    void ShouldRememberMissingPerson() {
+        when(personRepository.findDtoById(5)).thenReturn(Optional.empty());
+        when(commonCache.getByIdOrLoad(eq("persons"), eq(5), eq(PersonDto.class), any(), any()))
+                .thenAnswer(invocation -> invocation.<Supplier<PersonDto>>getArgument(3).get());
+        Optional<PersonDto> result = personService.findById(5);
+        assertTrue(result.isEmpty());
+        verify(negativeCache).put("missing_person_5");
+    }
+
+    @Test
+    void ShouldServeRepeatedMissFromNegativeCache() {
+        when(negativeCache.contains("missing_person_5")).thenReturn(true);
+        Optional<PersonDto> result = personService.findById(5);
+        assertTrue(result.isEmpty());
+        verify(personRepository, never()).findDtoById(any());
+    }
+
+    @Test
+    void ShouldLoadAllCacheMissesWithOneQueryInRequestOrder() {
+        PersonDto cachedPerson = new PersonDto(2, "Anna", "Petrova");
+        when(commonCache.getById(eq("persons"), anyInt(), eq(PersonDto.class)))
+                .thenAnswer(invocation -> Integer.valueOf(2).equals(invocation.getArgument(1)) ? cachedPerson : null);
+        when(personRepository.findDtosByIdIn(List.of(3, 1, 4))).thenReturn(List.of(
+                new PersonDto(3, "Oleg", "Sidorov"),
+                new PersonDto(1, "Ivan", "Ivanov")));
+        when(personRepository.findCountriesByPersonIds(List.of(3, 1, 4))).thenReturn(List.of());
+
+        List<PersonDto> result = personService.findAllByIds(List.of(3, 2, 1, 4));
+
+        assertEquals(3, result.size());
+        assertEquals(3, result.get(0).getId());
+        assertSame(cachedPerson, result.get(1));
+        assertEquals(1, result.get(2).getId());
+        verify(commonCache).putWithId("persons", 1, result.get(2));
+        verify(negativeCache).put("missing_person_4");
+        verify(personRepository, never()).findDtoById(any());
     }
 
     @Test
@@ -87,38 +147,86 @@ class PersonServiceTest {
         doNothing().when(commonCache).putWithId(anyString(), anyInt(), any());
         doNothing().when(commonCache).put(anyString(), any());
         doNothing().when(requestCounter).increment(anyString());
-        Person result = personService.create(mockPerson);
+        PersonDto result = personService.create(mockPerson);
         assertNotNull(result);
-        verify(mockSavedPerson).getId();
-        verify(commonCache).putWithId("persons", 1, mockSavedPerson);
+        assertEquals(1, result.getId());
+        verify(commonCache).putWithId("persons", 1, result);
         verify(commonCache).put("all_persons", null);
+        verify(negativeCache).evict("missing_person_1");
         verify(requestCounter).increment("PersonService.create");
     }
 
     @Test
     void ShouldUpdatePersonAndCache() {
-        Person mockExistingPerson = mock(Person.class);
-        Person mockUpdatedDetails = mock(Person.class);
-        Person mockSavedPerson = mock(Person.class);
-        when(personRepository.findById(1)).thenReturn(Optional.of(mockExistingPerson));
-        when(personRepository.save(mockExistingPerson)).thenReturn(mockSavedPerson);
-        when(mockSavedPerson.getSurname()).thenReturn("Updated");
-        doNothing().when(commonCache).removeById(anyString(), anyInt());
-        doNothing().when(commonCache).putWithId(anyString(), anyInt(), any());
-        Person result = personService.update(1, mockUpdatedDetails);
+        Person details = new Person("Ivan", "Updated");
+        details.setVersion(3L);
+        PersonDto updatedRow = new PersonDto(1, "Ivan", "Updated", 4L);
+        when(personRepository.updateIfVersionMatches(1, "Ivan", "Updated", 3L)).thenReturn(Optional.of(updatedRow));
+        PersonDto result = personService.update(1, details);
         assertEquals("Updated", result.getSurname());
-        verify(commonCache).removeById("persons", 1);
-        verify(commonCache).putWithId("persons", 1, mockSavedPerson);
+        assertEquals(4L, result.getVersion());
+        verify(commonCache).putWithId("persons", 1, updatedRow);
+        verify(personRepository, never()).findById(any());
+        verify(personRepository, never()).save(any());
+    }
+
+    @Test
+    void ShouldCacheUpdateOnlyAfterCommit() {
+        Person details = new Person("Ivan", "Updated");
+        details.setVersion(3L);
+        PersonDto updatedRow = new PersonDto(1, "Ivan", "Updated", 4L);
+        when(personRepository.updateIfVersionMatches(1, "Ivan", "Updated", 3L)).thenReturn(Optional.of(updatedRow));
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            personService.update(1, details);
+            verify(commonCache, never()).putWithId(anyString(), anyInt(), any());
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+            verify(commonCache).putWithId("persons", 1, updatedRow);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void ShouldRejectUpdateWithoutVersion() {
+        assertThrows(IllegalArgumentException.class, () -> personService.update(1, new Person("Ivan", "Updated")));
+        verify(personRepository, never()).updateIfVersionMatches(any(), any(), any(), any());
+    }
+
+    @Test
+    void ShouldKeepCacheWhenUpdateConflicts() {
+        Person details = new Person("Ivan", "Updated");
+        details.setVersion(2L);
+        when(personRepository.updateIfVersionMatches(1, "Ivan", "Updated", 2L))
+                .thenThrow(new OptimisticLockingFailureException("Person 1 was modified concurrently"));
+        assertThrows(OptimisticLockingFailureException.class, () -> personService.update(1, details));
+        verify(commonCache, never()).putWithId(anyString(), anyInt(), any());
+        verify(changeFeed, never()).publish(anyString(), any(), any(), any());
     }
 
     @Test
     void ShouldRemovePersonAndCache() {
-        Person mockPerson = mock(Person.class);
-        when(personRepository.findById(1)).thenReturn(Optional.of(mockPerson));
-        doNothing().when(commonCache).removeById(anyString(), anyInt());
-        doNothing().when(personRepository).deleteById(anyInt());
+        when(personRepository.deleteByIdInReturningIds(List.of(1))).thenReturn(List.of(1));
         personService.delete(1);
+        verify(personRepository).deleteCountriesByPersonIds(List.of(1));
+        verify(commonCache).removeById("persons", 1);
+        verify(changeFeed).publish("person", ChangeEvent.Type.DELETED, 1, null);
+        verify(personRepository, never()).findById(any());
+    }
+
+    @Test
+    void ShouldDeleteAllByIdsWithoutLoadingEntities() {
+        when(personRepository.deleteByIdInReturningIds(List.of(1, 2, 3))).thenReturn(List.of(1, 3));
+        personService.deleteAll(List.of(1, 2, 2, 3));
+        verify(personRepository).deleteCountriesByPersonIds(List.of(1, 2, 3));
+        verify(changeFeed).publish("person", ChangeEvent.Type.DELETED, 1, null);
+        verify(changeFeed).publish("person", ChangeEvent.Type.DELETED, 3, null);
+        verify(changeFeed, never()).publish("person", ChangeEvent.Type.DELETED, 2, null);
         verify(commonCache).removeById("persons", 1);
-        verify(personRepository).deleteById(1);
+        verify(commonCache).removeById("persons", 2);
+        verify(commonCache).removeById("persons", 3);
+        verify(commonCache).put("all_persons", null);
+        verify(personRepository, never()).findAllById(any());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,118 @@
+package com.example.mylab;
+
+import com.example.mylab.exception.QueryBudgetExceededException;
+import com.example.mylab.metrics.DbContextPropagation;
+import com.example.mylab.metrics.DbMetrics;
+import com.example.mylab.metrics.MeteredDataSource;
+import com.example.mylab.metrics.QueryBudgetDetector;
+import com.example.mylab.metrics.QueryScope;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Map;
+
+import static com.example.mylab.QueryCountAssertions.assertMaxRepeats;
+import static com.example.mylab.QueryCountAssertions.assertStatementCount;
+import static com.example.mylab.QueryCountAssertions.countQueries;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class QueryBudgetDetectorTest {
+
+    private final QueryBudgetDetector detector = new QueryBudgetDetector(true, false, 10, 2);
+    private final DbMetrics dbMetrics = new DbMetrics(200, detector);
+
+    @Test
+    void ShouldGroupStatementsByShape() {
+        QueryScope scope = countQueries(() -> {
+            dbMetrics.recordStatement("select * from country where person_id = 1", 1_000);
+            dbMetrics.recordStatement("select * from country where person_id = 2", 1_000);
+            dbMetrics.recordStatement("select * from person where id in (?, ?, ?)", 1_000);
+        });
+
+        assertEquals(3, scope.getStatementCount());
+        assertEquals(2, scope.getMaxRepeats());
+        assertEquals("select * from country where person_id = ?", scope.getMostRepeatedShape());
+    }
+
+    @Test
+    void ShouldReportRepeatedStatementAsViolation() {
+        QueryScope scope = countQueries(() -> {
+            for (int id = 0; id < 3; id++) {
+                dbMetrics.recordStatement("select * from country where person_id = " + id, 1_000);
+            }
+        });
+
+        assertNotNull(detector.violation(scope));
+    }
+
+    @Test
+    void ShouldFailWhenConfiguredToFail() {
+        QueryBudgetDetector failingDetector = new QueryBudgetDetector(true, true, 10, 2);
+        DbMetrics failingMetrics = new DbMetrics(200, failingDetector);
+
+        assertThrows(QueryBudgetExceededException.class, () -> countQueries(() -> {
+            for (int id = 0; id < 3; id++) {
+                failingMetrics.recordStatement("select * from country where person_id = " + id, 1_000);
+                failingMetrics.enforceQueryBudget();
+            }
+        }));
+    }
+
+    @Test
+    void ShouldNotMaskStatementFailureWithViolation() throws SQLException {
+        DbMetrics failingMetrics = new DbMetrics(200, new QueryBudgetDetector(true, true, 0, 0));
+        DataSource target = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        SQLException failure = new SQLException("deadlock detected");
+        when(target.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement("delete from person")).thenReturn(statement);
+        when(statement.executeUpdate()).thenThrow(failure);
+        PreparedStatement metered = new MeteredDataSource(target, failingMetrics).getConnection()
+                .prepareStatement("delete from person");
+
+        QueryScope scope = countQueries(() ->
+                assertSame(failure, assertThrows(SQLException.class, metered::executeUpdate)));
+
+        assertEquals(1, scope.getStatementCount());
+    }
+
+    @Test
+    void ShouldNotEnforceBudgetOnPropagatedScope() {
+        DbMetrics failingMetrics = new DbMetrics(200, new QueryBudgetDetector(true, true, 0, 0));
+        QueryScope scope = QueryScope.open("finished request");
+        Runnable refresh = DbContextPropagation.wrap(() -> {
+            failingMetrics.recordStatement("select id from person", 1_000);
+            failingMetrics.enforceQueryBudget();
+        });
+        scope.close();
+
+        assertDoesNotThrow(refresh::run);
+        assertEquals(1, scope.getStatementCount());
+    }
+
+    @Test
+    void ShouldIgnoreStatementsOutsideScope() {
+        dbMetrics.recordStatement("select 1", 1_000);
+        QueryScope empty = countQueries(() -> { });
+        QueryScope closed = countQueries(() -> dbMetrics.recordStatement("select 2", 1_000));
+        dbMetrics.recordStatement("select 3", 1_000);
+
+        assertEquals(0, empty.getStatementCount());
+        assertEquals(1, closed.getStatementCount());
+        assertEquals(Map.of("select ?", 1), closed.getShapeCounts());
+        assertNull(detector.violation(empty));
+        assertStatementCount(1, () -> dbMetrics.recordStatement("select 1", 1_000));
+        assertMaxRepeats(1, () -> dbMetrics.recordStatement("select 1", 1_000));
+    }
+}
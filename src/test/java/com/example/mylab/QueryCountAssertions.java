@@ -0,0 +1,31 @@
+package com.example.mylab;
+
+import com.example.mylab.metrics.QueryScope;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class QueryCountAssertions {
+
+    private QueryCountAssertions() {
+    }
+
+    public static QueryScope countQueries(Runnable action) {
+        try (QueryScope scope = QueryScope.open("test")) {
+            action.run();
+            return scope;
+        }
+    }
+
+    public static void assertStatementCount(int expected, Runnable action) {
+        QueryScope scope = countQueries(action);
+        assertEquals(expected, scope.getStatementCount(),
+                () -> "Unexpected statement count, statements: " + scope.getShapeCounts());
+    }
+
+    public static void assertMaxRepeats(int maxRepeats, Runnable action) {
+        QueryScope scope = countQueries(action);
+        assertTrue(scope.getMaxRepeats() <= maxRepeats,
+                () -> "Statement repeated " + scope.getMaxRepeats() + " times: " + scope.getMostRepeatedShape());
+    }
+}